@@ -1232,6 +1232,7 @@ open class KeyboardService : InputMethodService(), KeyboardView.OnKeyboardAction
 
         // Parse the inputted text to learn look-ahead word prediction.
         learnWords()
+        suggestor?.flushLearning()
 
         // Clear current composing text and candidates.
         mComposing!!.setLength(0)
@@ -3522,6 +3523,9 @@ open class KeyboardService : InputMethodService(), KeyboardView.OnKeyboardAction
     override fun onLowMemory() {
         super.onLowMemory()
         callTrace("onLowMemory()")
+
+        // Write the learned counts instead of holding them
+        suggestor?.flushLearning()
     }
 
     override fun toString(): String {
@@ -60,29 +60,21 @@ public class ArraySuggestions<S extends Suggestion> implements Suggestions<S> {
 
     @Override
     public boolean add(final S suggestion) {
-        if(suggestion == null) {
+        if(suggestion == null || mRequest.isExpired()) {
+            // Nothing to add, or too late
             return false;
         }
 
-        if(mRequest.isExpired()) {
-            // Too late
-            throw new Suggestor.SuggestionsExpiredException();
-        }
-
         return mSuggestions.add(suggestion);
     }
 
 
     public void add(final int index, final S suggestion) {
-        if(suggestion == null) {
+        if(suggestion == null || mRequest.isExpired()) {
+            // Nothing to add, or too late
             return;
         }
 
-        if(mRequest.isExpired()) {
-            // Too late
-            throw new Suggestor.SuggestionsExpiredException();
-        }
-
         mSuggestions.add(index, suggestion);
     }
 
@@ -122,30 +114,43 @@ public class ArraySuggestions<S extends Suggestion> implements Suggestions<S> {
 
     @Override
     public void addAll(final Suggestions<S> suggestions) {
-        if(suggestions == null) {
+        if(suggestions == null || mRequest.isExpired()) {
+            // Nothing to add, or too late
             return;
         }
 
-        if(mRequest.isExpired()) {
-            // Too late
-            throw new Suggestor.SuggestionsExpiredException();
+        mSuggestions.ensureCapacity(mSuggestions.size() + suggestions.size());
+        for(final S suggestion : suggestions) {
+            mSuggestions.add(suggestion);
         }
-
-        mSuggestions.addAll(suggestions.getSuggestionsList());
     }
 
 
     public void addAll(final int index, final Suggestions<S> suggestions) {
-        if(suggestions == null) {
+        if(suggestions == null || mRequest.isExpired()) {
+            // Nothing to add, or too late
             return;
         }
 
-        if(mRequest.isExpired()) {
-            // Too late
-            throw new Suggestor.SuggestionsExpiredException();
+        mSuggestions.addAll(index, suggestions.getSuggestionsList());
+    }
+
+
+    /**
+     * Replaces the suggestions with a range of an array.
+     */
+    /*package*/ void set(final S[] suggestions, final int start, final int end) {
+        mSuggestions = new ArrayList<>(end - start);
+        for(int iSuggestion = start; iSuggestion < end; iSuggestion++) {
+            mSuggestions.add(suggestions[iSuggestion]);
         }
+    }
 
-        mSuggestions.addAll(index, suggestions.getSuggestionsList());
+
+    @Override
+    public S getWorst() {
+        // Unbounded
+        return null;
     }
 
 
@@ -155,7 +160,7 @@ public class ArraySuggestions<S extends Suggestion> implements Suggestions<S> {
     }
 
 
-    public synchronized boolean isExpired() {
+    public boolean isExpired() {
         return mRequest.isExpired();
     }
 
@@ -1,57 +1,171 @@
 package com.comet.keyboard.dictionary;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
-public final class CacheDictionary /*implements LearningDictionary*/ {
-
-//	final LearningDictionary mDicCached;
-//	final Map<String, Suggestions> mCache = new HashMap<String, Suggestions>();
-//
-//	public CacheDictionary(LearningDictionary cachedDic) {
-//		mDicCached = cachedDic;
-//	}
-//
-//
-//	@Override
-//	public Suggestions getSuggestionsList(SuggestionsRequest request) {
-//		final Suggestions suggestions = new Suggestions(request);
-//		if(suggestions.getComposing().length() > 2)
-//			return mDicCached.getSuggestionsList(request);
-//
-//		Suggestions cachedSuggestions = mCache.get(suggestions.getComposing());
-//		if(cachedSuggestions != null)
-//			return cachedSuggestions;
-//
-//		// Cache these suggestions on-the-fly
-//		cachedSuggestions = mDicCached.getSuggestionsList(request);
-//		mCache.put(suggestions.getComposing(), (Suggestions) cachedSuggestions.clone()); // Flag as cached
-//
-//		return cachedSuggestions;
-//	}
-//
-//
-//
-//	@Override
-//	public boolean contains(String word) {
-//		return mDicCached.contains(word);
-//	}
-//
-//
-//	@Override
-//	public boolean learn(String word) {
-//		return mDicCached.learn(word);
-//	}
-//
-//
-//	@Override
-//	public boolean remember(String word) {
-//		return mDicCached.remember(word);
-//	}
-//
-//
-//	@Override
-//	public boolean forget(String word) {
-//		return mDicCached.forget(word);
-//	}
+/**
+ * A bounded LRU cache of the suggestions from a TrieDictionary, keyed by the request (composing
+ * and context words), language and layout. Retyping, backspacing and re-querying the same word
+ * returns the cached suggestions instead of searching again.
+ *
+ * <p>An entry is dropped when a word that its search could find is learned or forgotten. Changes
+ * to the count sum don't drop anything since they shift every score equally. Words that change
+ * while the dictionary loads, e.g. replayed learned words, drop the whole cache once at the end.
+ *
+ * @author Barry Fruitman
+ */
+public final class CacheDictionary<S extends Suggestion, R extends SuggestionsRequest>
+		implements LearningDictionary<S, R>, TrieDictionary.DictionaryListener {
+	private static final int MAX_ENTRIES = 100;
+
+	private final TrieDictionary<S, R> mDicCached;
+	private final String mKeyPrefix;
+	private final LinkedHashMap<String, Entry<S, R>> mCache = new LinkedHashMap<String, Entry<S, R>>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, Entry<S, R>> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+	private int mHitCount = 0;
+	private int mMissCount = 0;
+	// Incremented by every change, so results found during a change aren't cached
+	private int mChangeCount = 0;
+
+
+	CacheDictionary(final TrieDictionary<S, R> cachedDic) {
+		mDicCached = cachedDic;
+		mKeyPrefix = cachedDic.mCollator.getLanguageCode() + "/" + cachedDic.mCollator.getKeyboardLayout().getId() + "/";
+		mDicCached.setDictionaryListener(this);
+	}
+
+
+	@Override
+	public Suggestions<S> getSuggestions(final R request) {
+		return getSuggestions(request, null);
+	}
+
+
+	/**
+	 * Gets suggestions from the cache, or from the dictionary if they aren't cached.
+	 * @param request	The request
+	 * @param session	The search session passed to the dictionary on a miss, or null.
+	 */
+	Suggestions<S> getSuggestions(final R request, final SearchSession session) {
+		final String key = mKeyPrefix + request.getCacheKey();
+		final int changeCount;
+		synchronized(this) {
+			final Entry<S, R> entry = mCache.get(key);
+			if(entry != null) {
+				mHitCount++;
+				return entry.copy(request);
+			}
+
+			mMissCount++;
+			changeCount = mChangeCount;
+		}
+
+		final Suggestions<S> suggestions = mDicCached.getSuggestions(request, session);
+
+		synchronized(this) {
+			// Don't keep suggestions from a search that ran out of time or was cancelled
+			if(changeCount == mChangeCount && !request.isTruncated() && !request.isExpired()) {
+				mCache.put(key, new Entry<>(request, suggestions));
+			}
+		}
+
+		return suggestions;
+	}
+
+
+	@Override
+	public synchronized void onWordChanged(final String word) {
+		mChangeCount++;
+		final Iterator<Entry<S, R>> iterator = mCache.values().iterator();
+		while(iterator.hasNext()) {
+			if(mDicCached.canSuggest(iterator.next().mRequest, word)) {
+				iterator.remove();
+			}
+		}
+	}
+
+
+	@Override
+	public synchronized void onDictionaryChanged() {
+		mChangeCount++;
+		mCache.clear();
+	}
+
+
+	@Override
+	public boolean contains(final String word) {
+		return mDicCached.contains(word);
+	}
+
+
+	@Override
+	public boolean learn(final String word) {
+		return mDicCached.learn(word);
+	}
+
+
+	@Override
+	public boolean remember(final String word) {
+		return mDicCached.remember(word);
+	}
+
+
+	@Override
+	public boolean forget(final String word) {
+		return mDicCached.forget(word);
+	}
+
+
+	public synchronized int getHitCount() {
+		return mHitCount;
+	}
+
+
+	public synchronized int getMissCount() {
+		return mMissCount;
+	}
+
+
+	/**
+	 * A cached request and a private copy of its suggestions. The IME changes the suggestions
+	 * it gets (e.g. to match case) so every hit gets a new copy.
+	 */
+	private static final class Entry<S extends Suggestion, R extends SuggestionsRequest> {
+		private final R mRequest;
+		private final List<S> mSuggestions;
+
+
+		private Entry(final R request, final Suggestions<S> suggestions) {
+			mRequest = request;
+			mSuggestions = copy(suggestions.getSuggestionsList());
+		}
+
+
+		private Suggestions<S> copy(final SuggestionsRequest request) {
+			final ArraySuggestions<S> suggestions = new ArraySuggestions<>(request);
+			for(final S suggestion : copy(mSuggestions)) {
+				suggestions.add(suggestion);
+			}
+
+			return suggestions;
+		}
+
+
+		@SuppressWarnings("unchecked")
+		private static <S extends Suggestion> List<S> copy(final List<S> suggestions) {
+			final ArrayList<S> copies = new ArrayList<>(suggestions.size());
+			for(final S suggestion : suggestions) {
+				copies.add((S) suggestion.copy());
+			}
+
+			return copies;
+		}
+	}
 }
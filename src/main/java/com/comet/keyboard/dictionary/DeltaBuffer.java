@@ -0,0 +1,122 @@
+package com.comet.keyboard.dictionary;
+
+import android.database.sqlite.SQLiteException;
+import android.util.Log;
+
+import com.comet.keyboard.KeyboardApp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffers count increments in memory and writes them to a DB or journal in batches, so
+ * learning a message doesn't take a write per word. Increments of the same key are added together.
+ * They are written a few seconds after the first one, or when {@link #flushAll()} is called,
+ * e.g. when the input finishes or memory is low.
+ *
+ * @author Barry Fruitman
+ */
+abstract class DeltaBuffer {
+	private static final long FLUSH_DELAY_MS = 5000;
+
+	private static final ScheduledExecutorService sTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			final Thread thread = new Thread(runnable, "DeltaBufferTimer");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	// Buffers with increments that haven't been written. Locked after a buffer's own lock.
+	private static final LinkedHashSet<DeltaBuffer> sPending = new LinkedHashSet<>();
+
+	private HashMap<String, Integer> mDeltas = new HashMap<>();
+	// Held while writing, so batches are written in order
+	private final Object mWriteLock = new Object();
+
+	private final Runnable mFlushTask = new Runnable() {
+		@Override
+		public void run() {
+			flush();
+		}
+	};
+
+
+	/**
+	 * Adds to the count of a key. It's written later.
+	 * @param key	The key, in the format write() expects
+	 * @param delta	The amount to add
+	 */
+	final void add(final String key, final int delta) {
+		synchronized(this) {
+			final boolean scheduled = !mDeltas.isEmpty();
+			final Integer pending = mDeltas.get(key);
+			mDeltas.put(key, pending == null ? delta : pending + delta);
+			if(scheduled) {
+				return;
+			}
+
+			synchronized(sPending) {
+				sPending.add(this);
+			}
+		}
+
+		sTimer.schedule(mFlushTask, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+	}
+
+
+	/**
+	 * Writes the buffered increments now, on this thread.
+	 */
+	final void flush() {
+		synchronized(mWriteLock) {
+			final HashMap<String, Integer> deltas;
+			synchronized(this) {
+				if(mDeltas.isEmpty()) {
+					return;
+				}
+
+				deltas = mDeltas;
+				mDeltas = new HashMap<>();
+				synchronized(sPending) {
+					sPending.remove(this);
+				}
+			}
+
+			try {
+				write(deltas);
+			} catch (SQLiteException e) {
+				Log.e(KeyboardApp.LOG_TAG, "Failed to write " + deltas.size() + " counts", e);
+			}
+		}
+	}
+
+
+	/**
+	 * Writes the buffered increments of every buffer now, on this thread.
+	 */
+	static void flushAll() {
+		final ArrayList<DeltaBuffer> buffers;
+		synchronized(sPending) {
+			buffers = new ArrayList<>(sPending);
+		}
+
+		for(DeltaBuffer buffer : buffers) {
+			buffer.flush();
+		}
+	}
+
+
+	/**
+	 * Writes increments to the DB or journal, in a single batch.
+	 * @param deltas	The amount to add to each key's count
+	 * @throws SQLiteException	If the DB can't be written. The increments are lost.
+	 */
+	abstract void write(Map<String, Integer> deltas);
+}
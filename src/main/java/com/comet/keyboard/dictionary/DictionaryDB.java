@@ -7,6 +7,8 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.util.Log;
 
+import java.io.File;
+
 public abstract class DictionaryDB {
 
 	LexiconDbOpenHelper mOpenHelper = null;
@@ -28,7 +30,12 @@ public abstract class DictionaryDB {
 	}
 
 
-	public abstract int loadDictionaryFromDB(TrieDictionary lexicon, int nRecords);
+	/**
+	 * @return	The dictionary DB file of a language. It may not exist.
+	 */
+	static File getDatabaseFile(final Context context, final String language) {
+		return context.getDatabasePath(language + LexiconDbOpenHelper.DB_EXT);
+	}
 
 
 	public static class LexiconDbOpenHelper extends SQLiteOpenHelper {
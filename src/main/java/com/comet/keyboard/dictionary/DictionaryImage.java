@@ -0,0 +1,299 @@
+package com.comet.keyboard.dictionary;
+
+import com.comet.keyboard.dictionary.radixtrie.CompactTrie;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * A pre-built dictionary image: one or more compiled tries in a single binary file that is
+ * memory-mapped and used in place, so loading a dictionary doesn't parse or insert a
+ * single word.
+ *
+ * <pre>
+ * Header:   int magic, int version, int section count, int CRC32 of everything after the header
+ * Sections: int type, int count sum, then the trie written by {@link CompactTrie#writeTo},
+ *           or for SECTION_NGRAMS the model written by {@link NGramModel#writeTo}
+ * </pre>
+ *
+ * All values are little-endian and each section starts on a 4-byte boundary. Images are
+ * compiled from the dictionary DBs by the command-line tool in tools/dictcompiler.
+ *
+ * <p>The checksum is only verified when an image is written or first opened. Then the size,
+ * time and checksum of the image are written next to it (see {@link #getVerifiedFile}), and
+ * later opens of the same file skip it.
+ *
+ * @author Barry Fruitman
+ */
+public final class DictionaryImage {
+	public static final String FILE_EXT = ".img";
+	public static final int VERSION = 4;
+
+	public static final int SECTION_LEXICON = 1;
+	// The words that start a look-ahead bigram
+	public static final int SECTION_LOOKAHEAD = 2;
+	// The look-ahead bigrams and trigrams
+	public static final int SECTION_NGRAMS = 3;
+
+	private static final int MAGIC = 0x434b4449; // "CKDI"
+	private static final int HEADER_SIZE = 16;
+	private static final int SECTION_HEADER_SIZE = 8;
+	private static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+	private static final String VERIFIED_EXT = ".verified";
+
+	private final int[] mTypes;
+	private final int[] mCountSums;
+	private final CompactTrie[] mTries;
+	private final NGramModel mNGrams;
+
+
+	private DictionaryImage(int[] types, int[] countSums, CompactTrie[] tries, NGramModel ngrams) {
+		mTypes = types;
+		mCountSums = countSums;
+		mTries = tries;
+		mNGrams = ngrams;
+	}
+
+
+	/**
+	 * Maps an image file and checks its version, and its checksum unless this file was
+	 * verified before. The mapping is private, so the counts can be learned in place without
+	 * changing the file.
+	 * @param file	The image file
+	 * @return		The image, or null if the file doesn't exist.
+	 * @throws IOException	If the file can't be read or is not a valid image of this version.
+	 */
+	public static DictionaryImage open(File file) throws IOException {
+		if(!file.exists()) {
+			return null;
+		}
+
+		final MappedByteBuffer buffer;
+		try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			buffer = raf.getChannel().map(FileChannel.MapMode.PRIVATE, 0, raf.length());
+		}
+
+		final int checksum = buffer.remaining() < HEADER_SIZE ? 0 : buffer.order(BYTE_ORDER).getInt(12);
+		final boolean verified = isVerified(file, checksum);
+		final DictionaryImage image = read(buffer, !verified);
+		if(!verified) {
+			setVerified(file, checksum);
+		}
+
+		return image;
+	}
+
+
+	/**
+	 * @param verify	True to check the checksum
+	 */
+	static DictionaryImage read(ByteBuffer buffer, boolean verify) throws IOException {
+		buffer.order(BYTE_ORDER);
+		if(buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+			throw new IOException("Not a dictionary image");
+		}
+
+		final int version = buffer.getInt();
+		if(version != VERSION) {
+			throw new IOException("Unsupported dictionary image version " + version);
+		}
+
+		final int sectionCount = buffer.getInt();
+		final int checksum = buffer.getInt();
+		if(verify && checksum != checksum(buffer.duplicate())) {
+			throw new IOException("Dictionary image checksum mismatch");
+		}
+
+		final int[] types = new int[sectionCount];
+		final int[] countSums = new int[sectionCount];
+		final CompactTrie[] tries = new CompactTrie[sectionCount];
+		NGramModel ngrams = null;
+		try {
+			for(int iSection = 0; iSection < sectionCount; iSection++) {
+				types[iSection] = buffer.getInt();
+				countSums[iSection] = buffer.getInt();
+				if(types[iSection] == SECTION_NGRAMS) {
+					ngrams = NGramModel.wrap(buffer);
+				} else {
+					tries[iSection] = CompactTrie.wrap(buffer);
+				}
+				buffer.position(align(buffer.position()));
+			}
+		} catch (RuntimeException e) {
+			throw new IOException("Corrupt dictionary image", e);
+		}
+
+		return new DictionaryImage(types, countSums, tries, ngrams);
+	}
+
+
+	/**
+	 * @param type	The section type, e.g. SECTION_LEXICON
+	 * @return		The trie in this section, or null if the image doesn't have it.
+	 */
+	public CompactTrie getTrie(int type) {
+		final int iSection = indexOf(type);
+		return iSection >= 0 ? mTries[iSection] : null;
+	}
+
+
+	/**
+	 * @param type	The section type, e.g. SECTION_LEXICON
+	 * @return		The sum of all counts in this section's trie.
+	 */
+	public int getCountSum(int type) {
+		final int iSection = indexOf(type);
+		return iSection >= 0 ? mCountSums[iSection] : 0;
+	}
+
+
+	/**
+	 * @return	The look-ahead n-grams, or null if the image doesn't have them.
+	 */
+	public NGramModel getNGrams() {
+		return mNGrams;
+	}
+
+
+	private int indexOf(int type) {
+		for(int iSection = 0; iSection < mTypes.length; iSection++) {
+			if(mTypes[iSection] == type) {
+				return iSection;
+			}
+		}
+
+		return -1;
+	}
+
+
+	/**
+	 * Writes an image. The output only depends on the arguments, so the same tries always
+	 * produce the same bytes. The image is written to a temporary file first and then
+	 * renamed, so readers never see a partial image.
+	 * @param file		The image file to write
+	 * @param types		The section types
+	 * @param countSums	The count sum of each section
+	 * @param tries		The trie of each section
+	 * @throws IOException	If the file can't be written.
+	 */
+	public static void write(File file, int[] types, int[] countSums, CompactTrie[] tries) throws IOException {
+		write(file, types, countSums, tries, null, 0);
+	}
+
+
+	/**
+	 * Writes an image with an n-gram model after the tries, in a SECTION_NGRAMS section.
+	 * @param ngrams			The model, or null for none
+	 * @param ngramsCountSum	The sum of the model's trigram counts
+	 * @see #write(File, int[], int[], CompactTrie[])
+	 */
+	public static void write(File file, int[] types, int[] countSums, CompactTrie[] tries,
+			NGramModel ngrams, int ngramsCountSum) throws IOException {
+		int size = HEADER_SIZE;
+		for(CompactTrie trie : tries) {
+			size = align(size + SECTION_HEADER_SIZE + trie.getByteSize());
+		}
+		if(ngrams != null) {
+			size = align(size + SECTION_HEADER_SIZE + ngrams.getByteSize());
+		}
+
+		final ByteBuffer buffer = ByteBuffer.allocate(size).order(BYTE_ORDER);
+		buffer.position(HEADER_SIZE);
+		for(int iSection = 0; iSection < tries.length; iSection++) {
+			buffer.putInt(types[iSection]);
+			buffer.putInt(countSums[iSection]);
+			tries[iSection].writeTo(buffer);
+			buffer.position(align(buffer.position()));
+		}
+		if(ngrams != null) {
+			buffer.putInt(SECTION_NGRAMS);
+			buffer.putInt(ngramsCountSum);
+			ngrams.writeTo(buffer);
+			buffer.position(align(buffer.position()));
+		}
+
+		buffer.position(HEADER_SIZE);
+		final int checksum = checksum(buffer.duplicate());
+		buffer.position(0);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(tries.length + (ngrams != null ? 1 : 0));
+		buffer.putInt(checksum);
+		buffer.position(0);
+
+		final File tmpFile = new File(file.getPath() + ".tmp");
+		try(FileOutputStream out = new FileOutputStream(tmpFile)) {
+			out.getChannel().write(buffer);
+			out.getFD().sync();
+		}
+
+		if(!tmpFile.renameTo(file)) {
+			tmpFile.delete();
+			throw new IOException("Failed to write " + file);
+		}
+
+		setVerified(file, checksum);
+	}
+
+
+	/**
+	 * @return	The file that records when an image was verified. Delete it with the image.
+	 */
+	public static File getVerifiedFile(File file) {
+		return new File(file.getPath() + VERIFIED_EXT);
+	}
+
+
+	/**
+	 * @return	True if the image was verified when it had the same size, time and checksum.
+	 */
+	private static boolean isVerified(File file, int checksum) {
+		final File verifiedFile = getVerifiedFile(file);
+		if(!verifiedFile.exists()) {
+			return false;
+		}
+
+		try(DataInputStream in = new DataInputStream(new FileInputStream(verifiedFile))) {
+			return in.readLong() == file.length()
+					&& in.readLong() == file.lastModified()
+					&& in.readInt() == checksum;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+
+	private static void setVerified(File file, int checksum) {
+		try(DataOutputStream out = new DataOutputStream(new FileOutputStream(getVerifiedFile(file)))) {
+			out.writeLong(file.length());
+			out.writeLong(file.lastModified());
+			out.writeInt(checksum);
+		} catch (IOException e) {
+			// It's verified again next time
+			getVerifiedFile(file).delete();
+		}
+	}
+
+
+	private static int checksum(ByteBuffer buffer) {
+		final CRC32 crc = new CRC32();
+		crc.update(buffer);
+
+		return (int) crc.getValue();
+	}
+
+
+	private static int align(int position) {
+		return (position + 3) & ~3;
+	}
+}
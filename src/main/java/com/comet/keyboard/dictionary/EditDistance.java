@@ -11,9 +11,14 @@ public final class EditDistance {
 
 
 	public static double getMaxEditDistance(CharSequence composing) {
-		if(composing.length() <= 4) {
+		return getMaxEditDistance(composing.length());
+	}
+
+
+	public static double getMaxEditDistance(int length) {
+		if(length <= 4) {
 			return 2;
-		} else if(composing.length() <= 8) {
+		} else if(length <= 8) {
 			return 3;
 		}
 
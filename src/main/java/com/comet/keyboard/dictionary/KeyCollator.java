@@ -4,20 +4,25 @@ import com.comet.keyboard.languages.Language;
 import com.comet.keyboard.layouts.KeyboardLayout;
 import com.comet.keyboard.dictionary.radixtrie.RadixTrie.CharComparator;
 
+import java.util.HashMap;
+
 public class KeyCollator implements CharComparator {
 	private Language mLanguage;
 	private KeyboardLayout mLayout;
+	private final ProximityTable mProximity;
 
 
 	public KeyCollator(Language language, KeyboardLayout layout) {
 		mLanguage = language;
 		mLayout   = layout;
+		mProximity = ProximityTable.getTable(this);
 	}
 
 
 	public KeyCollator(String languageCode, KeyboardLayout layout) {
 		mLanguage = Language.createLanguage(languageCode);
 		mLayout   = layout;
+		mProximity = ProximityTable.getTable(this);
 	}
 	
 	
@@ -48,6 +53,15 @@ public class KeyCollator implements CharComparator {
 	 * @return		0 if close or exact match, 1 if typo, -1 if no match.
 	 */
 	public int compareCharToKey(char c, char key) {
+		final int distance = mProximity.getDistance(c, key);
+		if(distance != ProximityTable.UNKNOWN)
+			return distance;
+
+		return compareCharToKeySlow(c, key);
+	}
+
+
+	private int compareCharToKeySlow(char c, char key) {
 		// Compare against each other and close (i.e. accented) letters
 		if(mLanguage.compareChars(c, key) == 0)
 			return 0;
@@ -65,4 +79,76 @@ public class KeyCollator implements CharComparator {
 	public int compareChars(char c1, char c2) {
 		return mLanguage.compareChars(c1, c2);
 	}
-}
\ No newline at end of file
+
+
+	/**
+	 * The result of compareCharToKey() for every pair of letters, digits, apostrophes and
+	 * hyphens below TABLE_CHARS, computed once per layout and language. Each of those chars
+	 * is a class, and the distance between two classes is a single array load.
+	 */
+	private static final class ProximityTable {
+		private static final int TABLE_CHARS = 0x180;	// Latin-1 and Latin Extended-A
+		private static final byte UNKNOWN = 2;
+
+		private static final HashMap<String, ProximityTable> mTables = new HashMap<>();
+
+		// Class of each char, or 0 if it has none
+		private final short[] mClasses = new short[TABLE_CHARS];
+		private final int mClassCount;
+		// Distance from char class i to key class j is mDistances[i * mClassCount + j]
+		private final byte[] mDistances;
+
+
+		private ProximityTable(KeyCollator collator) {
+			final char[] chars = new char[TABLE_CHARS];
+			int classCount = 1;
+			for(char c = 0; c < TABLE_CHARS; c++) {
+				if(Character.isLetterOrDigit(c) || c == '\'' || c == '-') {
+					chars[classCount] = c;
+					mClasses[c] = (short) classCount++;
+				}
+			}
+
+			mClassCount = classCount;
+			mDistances = new byte[classCount * classCount];
+			for(int iChar = 1; iChar < classCount; iChar++) {
+				for(int iKey = 1; iKey < classCount; iKey++) {
+					mDistances[iChar * classCount + iKey] = (byte) collator.compareCharToKeySlow(chars[iChar], chars[iKey]);
+				}
+			}
+		}
+
+
+		/**
+		 * Tables are shared by all collators with the same layout and language.
+		 */
+		private static ProximityTable getTable(KeyCollator collator) {
+			final String key = collator.mLayout.getId() + "/" + collator.mLanguage.getCode();
+			synchronized(mTables) {
+				ProximityTable table = mTables.get(key);
+				if(table == null) {
+					table = new ProximityTable(collator);
+					mTables.put(key, table);
+				}
+
+				return table;
+			}
+		}
+
+
+		/**
+		 * @return	The distance from c to key, or UNKNOWN if either has no class.
+		 */
+		private int getDistance(char c, char key) {
+			if(c >= TABLE_CHARS || key >= TABLE_CHARS)
+				return UNKNOWN;
+
+			final int charClass = mClasses[c];
+			final int keyClass = mClasses[key];
+			if(charClass == 0 || keyClass == 0)
+				return UNKNOWN;
+
+			return mDistances[charClass * mClassCount + keyClass];
+		}
+	}
+}
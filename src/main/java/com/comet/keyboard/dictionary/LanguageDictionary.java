@@ -2,6 +2,7 @@ package com.comet.keyboard.dictionary;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
 import android.util.Log;
@@ -9,7 +10,12 @@ import android.util.Log;
 import com.comet.keyboard.KeyboardApp;
 import com.comet.keyboard.KeyboardService;
 import com.comet.keyboard.R;
+import com.comet.keyboard.dictionary.radixtrie.CompactTrie;
+import com.comet.keyboard.dictionary.radixtrie.RadixTrie;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.Locale;
@@ -18,8 +24,12 @@ import java.util.Locale;
 public final class LanguageDictionary extends TrieDictionary<LanguageDictionary.LanguageSuggestion, SuggestionsRequest> {
 
 	private static TrieDictionary mLoading = null;
+	private static final String JOURNAL_EXT = ".lexicon";
+	// The number of words loaded before suggestions are shown
+	private static final int FIRST_WORDS_COUNT = 5000;
+
 	private LanguageDictionaryDB mLanguageDB;
-	private UserDB mUserDB;
+	private volatile LearningJournal mJournal;
 
 
 	LanguageDictionary(final Context context, final KeyCollator collator) {
@@ -47,42 +57,103 @@ public final class LanguageDictionary extends TrieDictionary<LanguageDictionary.
 			return;
 		}
 
-		// TODO Replace this with OnLoadLexiconListener interface
+		// Use the pre-built image if there is one. It's mapped and used in place.
+		if(loadDictionaryFromImage(DictionaryImage.SECTION_LEXICON)) {
+			setCountSum(getCountSum() + loadLearnedWords());
+			return;
+		}
+
+		// Otherwise use the image cached the last time the DB was loaded
+		final File cacheFile = getCacheImageFile(DictionaryImage.SECTION_LEXICON);
+		if(loadDictionaryFromImage(cacheFile, DictionaryImage.SECTION_LEXICON)) {
+			setCountSum(getCountSum() + loadLearnedWords());
+			return;
+		}
+
+		// Show a message until the most frequent words can be suggested, then load the rest
+		// in the background
 		final KeyboardService ime = KeyboardService.IME;
 		if(ime != null && ime.isInputViewCreated() && !ime.isNeedUpdateDicts()) {
 			KeyboardService.IME.showMessage(mContext.getString(R.string.dictionary_loading_message), null);
 		}
+		getLoadProgress().addListener(new LoadProgress.Listener() {
+			@Override
+			public void onLoadProgress(final LoadProgress progress) {
+				getLoadProgress().removeListener(this);
+				if(ime != null && ime.isInputViewCreated() && !ime.isNeedUpdateDicts()) {
+					KeyboardService.IME.clearMessage();
+				}
+
+				Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
+			}
+		});
 
-		// Load dictionary from DB
 		mLanguageDB = new LanguageDictionaryDB(mContext, mCollator.getLanguageCode());
+		final int totalCount = mLanguageDB.getWordCount();
+
+		// Read each word once, most frequent first. The words read so far are compiled and
+		// published at each milestone, so the most frequent ones can be suggested right away.
+		// Words learned from now on go in the overlay.
+		final LoadedWords words = new LoadedWords(totalCount);
+		mLanguageDB.loadDictionaryFromDB(words, totalCount);
+		if(words.size() == 0 || words.getCompiledCount() < words.size()) {
+			setBase(words.compile());
+		}
+		setCountSum(words.getCountSum());
+		writeCacheImage(cacheFile, DictionaryImage.SECTION_LEXICON, null);
+
+		// Merge in the words learned on this device
+		setCountSum(words.getCountSum() + loadLearnedWords());
+	}
 
-		// Pre-load first 5,000 records for quick response.
-		setCountSum(mLanguageDB.loadDictionaryFromDB(this, 5000));
 
-		// Clear the cache of any suggestions that were cached during pre-loading
-		if (ime != null && ime.isInputViewCreated() && !ime.isNeedUpdateDicts()) {
-			KeyboardService.IME.clearMessage();
+	/**
+	 * Called after each word is read from the DB. Publishes the words read so far when they
+	 * reach a milestone: the most frequent FIRST_WORDS_COUNT words, then half of them.
+	 * @param words			The words read so far
+	 * @param totalCount	The number of words in the DB
+	 */
+	private void onWordRead(final LoadedWords words, final int totalCount) {
+		final int milestone;
+		if(words.size() == Math.min(FIRST_WORDS_COUNT, totalCount)) {
+			milestone = LoadProgress.FIRST_WORDS;
+		} else if(words.size() == totalCount / 2 && words.size() > FIRST_WORDS_COUNT) {
+			milestone = LoadProgress.HALF;
+		} else {
+			return;
 		}
 
-		Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
+		setBase(words.compile());
+		publishLoaded(milestone, words.size(), totalCount, words.getCountSum());
+	}
+
 
-		// Now load all records.
-		int countSum = mLanguageDB.loadDictionaryFromDB(this, -1);
+	/**
+	 * Replays the words learned on this device on top of the dictionary. The first time, the
+	 * words learned before there was a journal are copied into it from the user DB.
+	 * @return	The sum of the learned counts
+	 */
+	private int loadLearnedWords() {
+		final LearningJournal journal =
+				new LearningJournal(mContext.getDatabasePath(mCollator.getLanguageCode() + JOURNAL_EXT));
+		if(!journal.exists()) {
+			UserDB.getUserDB(mContext, mCollator.getLanguageCode()).copyLanguage(journal);
+			journal.flush();
+		}
 
-		// Merge in user db
-		mUserDB = UserDB.getUserDB(mContext, mCollator.getLanguageCode());
-		countSum += mUserDB.loadLanguage(this);
+		final int countSum = journal.replay(this);
+		mJournal = journal;
 
-		setCountSum(countSum);
+		return countSum;
 	}
 
 
 	@Override
-	public Suggestions<LanguageSuggestion> getSuggestions(final SuggestionsRequest request) {
+	Suggestions<LanguageSuggestion> getSuggestions(final SuggestionsRequest request, final SearchSession session) {
 		final ArraySuggestions<LanguageSuggestion> unsortedSuggestions =
 				new ArraySuggestions<>(
 						request,
-						super.getSuggestions(request));
+						super.getSuggestions(request, session));
 
 		// Add top match (if any) to top of results.
 		final Iterator<LanguageSuggestion> matchIterator =
@@ -107,28 +178,11 @@ public final class LanguageDictionary extends TrieDictionary<LanguageDictionary.
 
 
 	@Override
-	protected Comparator<LanguageSuggestion> getComparator() {
-		return mComparator;
+	final double getScore(final LanguageSuggestion suggestion) {
+		return suggestion.getScore();
 	}
 
 
-	private final Comparator<LanguageSuggestion> mComparator = new Comparator<LanguageSuggestion>() {
-		@Override
-		public int compare(LanguageSuggestion suggestion1, LanguageSuggestion suggestion2) {
-			// Compare scores
-			final double score = suggestion1.getScore();
-			final double otherScore = suggestion2.getScore();
-
-			if(score == otherScore) {
-				return suggestion1.getWord().compareTo(suggestion2.getWord());
-			}
-
-			// Return the comparison
-			return score < otherScore ? -1 : 1;
-		}
-	};
-
-
 	/**
 	 * Class LanguageSuggestion
 	 * @author Barry
@@ -182,15 +236,15 @@ public final class LanguageDictionary extends TrieDictionary<LanguageDictionary.
 
 	@Override
 	final void incrementDb(String word, int increment) {
-		// Write to db
-		mUserDB.insertOrIncrement(mCollator.getLanguageCode(), word, increment);
+		// Write to the journal
+		mJournal.increment(word, increment);
 	}
 
 
 	@Override
 	final void deleteFromDB(String word) {
-		// Write to db
-		mUserDB.deleteWordFromLexicon(mCollator.getLanguageCode(), word);
+		// Write to the journal
+		mJournal.delete(word);
 	}
 
 
@@ -207,34 +261,50 @@ public final class LanguageDictionary extends TrieDictionary<LanguageDictionary.
 
 
 		/**
-		 * Loads a lexicon from a table into a trie
-		 * @param lexicon		The trie to fill
-		 * @param nRecords		The maximum number of records to load
-		 * @return				The sum of all counts
+		 * @return	The number of words in the lexicon table
 		 */
-		@Override
-		public final int loadDictionaryFromDB(final TrieDictionary lexicon, final int nRecords) {
-			final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+		public final int getWordCount() {
+			final SQLiteDatabase db = mOpenHelper.getReadableDatabase();
 
 			if(db == null) {
 				return 0;
 			}
 
-			int countSum = 0;
 			try {
-				final String limit = nRecords > 0 ? String.valueOf(nRecords) : null;
+				return (int) DatabaseUtils.queryNumEntries(db, LEXICON_TABLE_NAME, "count>=0");
+			} catch (SQLiteException e) {
+				Log.e(KeyboardApp.LOG_TAG, e.getMessage(), e);
+				return 0;
+			} finally {
+				mOpenHelper.close();
+			}
+		}
+
+
+		/**
+		 * Reads a lexicon from a table, most frequent words first. The dictionary is told
+		 * after each word, so it can publish the words read so far.
+		 * @param words			Filled with the words
+		 * @param totalCount	The number of words in the table, from getWordCount()
+		 */
+		public final void loadDictionaryFromDB(final LoadedWords words, final int totalCount) {
+			final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+
+			if(db == null) {
+				return;
+			}
+
+			try {
 				final Cursor cursor = db.query(LEXICON_TABLE_NAME, new String[] {LEXICON_FIELD_WORD, LEXICON_FIELD_COUNT}, "count>=0",
-						null, null, null, "count DESC", limit);
+						null, null, null, "count DESC");
 
 				if (cursor == null) {
-					return 0;
+					return;
 				}
 
-				while(cursor.moveToNext() && !lexicon.isCancelled()) {
-					final String word = cursor.getString(0);
-					final int count = cursor.getInt(1);
-					countSum += count;
-					lexicon.insert(word, count);
+				while(cursor.moveToNext() && !isCancelled()) {
+					words.add(cursor.getString(0), cursor.getInt(1));
+					onWordRead(words, totalCount);
 				}
 
 				cursor.close();
@@ -244,8 +314,78 @@ public final class LanguageDictionary extends TrieDictionary<LanguageDictionary.
 			} finally {
 				mOpenHelper.close();
 			}
+		}
+	}
+
+
+	/**
+	 * The words read from the DB so far, most frequent first.
+	 */
+	private static final class LoadedWords {
+		private final ArrayList<String> mWords;
+		private int[] mCounts;
+		private int mCountSum = 0;
+		private int mCompiledCount = 0;
+
+
+		private LoadedWords(final int capacity) {
+			mWords = new ArrayList<>(capacity);
+			mCounts = new int[Math.max(capacity, 16)];
+		}
+
+
+		private void add(final String word, final int count) {
+			if(mWords.size() == mCounts.length) {
+				mCounts = Arrays.copyOf(mCounts, mCounts.length * 2);
+			}
+			mCounts[mWords.size()] = count;
+			mWords.add(word);
+			mCountSum += count;
+		}
+
+
+		private int size() {
+			return mWords.size();
+		}
+
+
+		private int getCountSum() {
+			return mCountSum;
+		}
+
+
+		/**
+		 * @return	The number of words in the last trie compiled
+		 */
+		private int getCompiledCount() {
+			return mCompiledCount;
+		}
+
+
+		/**
+		 * Sorts the words read so far and builds them into a trie in a single pass. The sort is
+		 * stable, so duplicate words stay in count order and keep the lowest count.
+		 * @return	A compact trie of the words read so far
+		 */
+		private CompactTrie compile() {
+			final Integer[] order = new Integer[mWords.size()];
+			for(int iWord = 0; iWord < order.length; iWord++) {
+				order[iWord] = iWord;
+			}
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(final Integer l, final Integer r) {
+					return mWords.get(l).compareTo(mWords.get(r));
+				}
+			});
+
+			final RadixTrie.Builder builder = new RadixTrie.Builder();
+			for(Integer iWord : order) {
+				builder.add(mWords.get(iWord), mCounts[iWord]);
+			}
+			mCompiledCount = order.length;
 
-			return countSum;
+			return CompactTrie.compile(builder.build());
 		}
 	}
 }
@@ -0,0 +1,448 @@
+package com.comet.keyboard.dictionary;
+
+import android.util.Log;
+
+import com.comet.keyboard.KeyboardApp;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+
+/**
+ * The words a dictionary learned and forgot, in an append-only binary journal. Learning
+ * appends a record instead of updating a DB row, and loading replays the journal on top of
+ * the dictionary. When the journal gets big it is folded into a snapshot in the background.
+ *
+ * <pre>
+ * Journal:  int magic, int version, long generation, then records
+ * Record:   byte op, int count, short length, UTF-8 word, int CRC32 of the op, count and word
+ * Snapshot: int magic, int version, long generation, int count sum, int word count,
+ *           then per word: byte deleted, int count, short length, UTF-8 word,
+ *           then int CRC32 of everything before it
+ * </pre>
+ *
+ * A snapshot has every record of the journals up to its generation, so a journal of that
+ * generation or older is skipped. A record that was only partly written when the process
+ * died fails its CRC, and it and everything after it are dropped.
+ *
+ * @author Barry Fruitman
+ */
+final class LearningJournal extends DeltaBuffer {
+	private static final int JOURNAL_MAGIC = 0x434b4c4a; // "CKLJ"
+	private static final int SNAPSHOT_MAGIC = 0x434b4c53; // "CKLS"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+	private static final int COMPACT_SIZE = 64 * 1024;
+	private static final int MAX_WORD_BYTES = Short.MAX_VALUE;
+
+	private static final byte OP_INCREMENT = 1;
+	private static final byte OP_DELETE = 2;
+
+	private static final ExecutorService sCompactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			final Thread thread = new Thread(runnable, "LearningJournalCompactor");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		}
+	});
+
+	private final File mJournalFile;
+	private final File mSnapshotFile;
+
+	// Guards the files and everything below. Not this, so learning doesn't wait for writes.
+	private final Object mFileLock = new Object();
+	// Everything in the snapshot and the journal, folded by word
+	private final HashMap<String, Entry> mEntries = new HashMap<>();
+	private int mCountSum = 0;
+	private long mGeneration = 0;
+	private FileOutputStream mOut = null;
+	private long mJournalSize = 0;
+	private boolean mCompacting = false;
+	// True once replay() read the snapshot and the journal. Until then mEntries may be
+	// missing words, so it isn't compacted.
+	private boolean mLoaded = false;
+
+
+	/**
+	 * The folded records of one word.
+	 */
+	private static final class Entry {
+		// True if the word was forgotten, i.e. its count was set to 0 before the increments
+		boolean mDeleted;
+		int mCount;
+	}
+
+
+	/**
+	 * @param file	The path of the journal, without an extension. The journal and the
+	 *              snapshot are next to it.
+	 */
+	LearningJournal(final File file) {
+		mJournalFile = new File(file.getPath() + ".journal");
+		mSnapshotFile = new File(file.getPath() + ".snapshot");
+	}
+
+
+	/**
+	 * @return	True if there is a journal or a snapshot on disk.
+	 */
+	boolean exists() {
+		return mJournalFile.exists() || mSnapshotFile.exists();
+	}
+
+
+	/**
+	 * Reads the snapshot and the journal, and applies them to a dictionary: each learned word
+	 * gets its learned count added, and forgotten words get only the count learned since.
+	 * Must be called once, before anything is learned, but it can be after importing words.
+	 * The journal is only compacted after a replay that read everything, so a snapshot that
+	 * couldn't be read is never replaced by one with fewer words.
+	 * @param dictionary	The loaded dictionary
+	 * @return				The sum of the learned counts
+	 */
+	int replay(final TrieDictionary<?, ?> dictionary) {
+		synchronized(mFileLock) {
+			// Anything already appended is read back from the journal
+			mEntries.clear();
+			mCountSum = 0;
+			try {
+				final boolean snapshotRead = readSnapshot();
+				readJournal();
+				mLoaded = snapshotRead;
+			} catch (IOException e) {
+				Log.e(KeyboardApp.LOG_TAG, "Failed to read " + mJournalFile, e);
+			}
+
+			for(Map.Entry<String, Entry> entry : mEntries.entrySet()) {
+				final String word = entry.getKey();
+				final Entry learned = entry.getValue();
+				dictionary.insert(word, learned.mDeleted ? learned.mCount : dictionary.getCount(word) + learned.mCount);
+			}
+
+			return mCountSum;
+		}
+	}
+
+
+	/**
+	 * Adds to the count of a word. It's appended later, with others. See DeltaBuffer.
+	 */
+	void increment(final String word, final int increment) {
+		add(word, increment);
+	}
+
+
+	/**
+	 * Records that a word was forgotten, after the increments before it.
+	 */
+	void delete(final String word) {
+		flush();
+
+		synchronized(mFileLock) {
+			try {
+				append(OP_DELETE, word, 0);
+				sync();
+			} catch (IOException e) {
+				Log.e(KeyboardApp.LOG_TAG, "Failed to write " + mJournalFile, e);
+			}
+		}
+	}
+
+
+	@Override
+	void write(final Map<String, Integer> deltas) {
+		synchronized(mFileLock) {
+			try {
+				for(Map.Entry<String, Integer> delta : deltas.entrySet()) {
+					append(OP_INCREMENT, delta.getKey(), delta.getValue());
+				}
+				sync();
+			} catch (IOException e) {
+				Log.e(KeyboardApp.LOG_TAG, "Failed to write " + mJournalFile, e);
+			}
+		}
+	}
+
+
+	private void append(final byte op, final String word, final int count) throws IOException {
+		final byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+		if(bytes.length > MAX_WORD_BYTES) {
+			return;
+		}
+
+		if(mOut == null) {
+			openJournal();
+		}
+
+		final ByteBuffer record = ByteBuffer.allocate(1 + 4 + 2 + bytes.length + 4);
+		record.put(op);
+		record.putInt(count);
+		record.putShort((short) bytes.length);
+		record.put(bytes);
+		record.putInt(crc(record.array(), record.position()));
+		mOut.write(record.array());
+		mJournalSize += record.capacity();
+
+		apply(op, word, count);
+	}
+
+
+	private void apply(final byte op, final String word, final int count) {
+		Entry entry = mEntries.get(word);
+		if(entry == null) {
+			entry = new Entry();
+			mEntries.put(word, entry);
+		}
+
+		if(op == OP_DELETE) {
+			entry.mDeleted = true;
+			entry.mCount = 0;
+		} else {
+			entry.mCount += count;
+			mCountSum += count;
+		}
+	}
+
+
+	private void sync() throws IOException {
+		if(mOut == null) {
+			return;
+		}
+
+		mOut.flush();
+		mOut.getFD().sync();
+
+		if(mJournalSize > COMPACT_SIZE && !mCompacting && mLoaded) {
+			mCompacting = true;
+			sCompactor.execute(new Runnable() {
+				@Override
+				public void run() {
+					compact();
+				}
+			});
+		}
+	}
+
+
+	/**
+	 * Opens the journal for appending, and starts a new one if there is none.
+	 */
+	private void openJournal() throws IOException {
+		if(!mJournalFile.exists()) {
+			writeJournalHeader(mJournalFile, mGeneration);
+		}
+
+		mOut = new FileOutputStream(mJournalFile, true);
+		mJournalSize = mJournalFile.length();
+	}
+
+
+	private static void writeJournalHeader(final File file, final long generation) throws IOException {
+		final File tmpFile = new File(file.getPath() + ".tmp");
+		try(FileOutputStream out = new FileOutputStream(tmpFile)) {
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(JOURNAL_MAGIC);
+			header.putInt(VERSION);
+			header.putLong(generation);
+			out.write(header.array());
+			out.getFD().sync();
+		}
+
+		if(!tmpFile.renameTo(file)) {
+			tmpFile.delete();
+			throw new IOException("Failed to write " + file);
+		}
+	}
+
+
+	/**
+	 * Folds the journal into a new snapshot and starts an empty journal of the next
+	 * generation. A crash in between leaves the snapshot with the old journal, which it
+	 * already has.
+	 */
+	private void compact() {
+		synchronized(mFileLock) {
+			try {
+				writeSnapshot();
+				if(mOut != null) {
+					mOut.close();
+					mOut = null;
+				}
+				mGeneration++;
+				writeJournalHeader(mJournalFile, mGeneration);
+				mJournalSize = HEADER_SIZE;
+
+				Log.i(KeyboardApp.LOG_TAG, "Compacted " + mJournalFile + " into " + mEntries.size() + " words");
+			} catch (IOException e) {
+				Log.e(KeyboardApp.LOG_TAG, "Failed to compact " + mJournalFile, e);
+			} finally {
+				mCompacting = false;
+			}
+		}
+	}
+
+
+	private void writeSnapshot() throws IOException {
+		int size = HEADER_SIZE + 8 + 4;
+		for(String word : mEntries.keySet()) {
+			size += 1 + 4 + 2 + word.getBytes(StandardCharsets.UTF_8).length;
+		}
+
+		final ByteBuffer snapshot = ByteBuffer.allocate(size);
+		snapshot.putInt(SNAPSHOT_MAGIC);
+		snapshot.putInt(VERSION);
+		snapshot.putLong(mGeneration);
+		snapshot.putInt(mCountSum);
+		snapshot.putInt(mEntries.size());
+		for(Map.Entry<String, Entry> entry : mEntries.entrySet()) {
+			final byte[] bytes = entry.getKey().getBytes(StandardCharsets.UTF_8);
+			snapshot.put((byte) (entry.getValue().mDeleted ? 1 : 0));
+			snapshot.putInt(entry.getValue().mCount);
+			snapshot.putShort((short) bytes.length);
+			snapshot.put(bytes);
+		}
+		snapshot.putInt(crc(snapshot.array(), snapshot.position()));
+
+		final File tmpFile = new File(mSnapshotFile.getPath() + ".tmp");
+		try(FileOutputStream out = new FileOutputStream(tmpFile)) {
+			out.write(snapshot.array());
+			out.getFD().sync();
+		}
+
+		if(!tmpFile.renameTo(mSnapshotFile)) {
+			tmpFile.delete();
+			throw new IOException("Failed to write " + mSnapshotFile);
+		}
+	}
+
+
+	/**
+	 * Reads the snapshot, if there is one.
+	 * @return	False if the snapshot is corrupt. Its words are lost, but the journal can
+	 * 			still be read.
+	 */
+	private boolean readSnapshot() throws IOException {
+		if(!mSnapshotFile.exists()) {
+			return true;
+		}
+
+		final byte[] bytes = new byte[(int) mSnapshotFile.length()];
+		try(DataInputStream in = new DataInputStream(new FileInputStream(mSnapshotFile))) {
+			in.readFully(bytes);
+		}
+
+		final ByteBuffer snapshot = ByteBuffer.wrap(bytes);
+		if(bytes.length < HEADER_SIZE + 12
+				|| snapshot.getInt() != SNAPSHOT_MAGIC
+				|| snapshot.getInt() != VERSION
+				|| snapshot.getInt(bytes.length - 4) != crc(bytes, bytes.length - 4)) {
+			// Read any journal, whatever its generation
+			Log.e(KeyboardApp.LOG_TAG, "Corrupt snapshot " + mSnapshotFile);
+			mGeneration = 0;
+			return false;
+		}
+
+		// The journals up to this generation are in the snapshot
+		mGeneration = snapshot.getLong() + 1;
+		mCountSum = snapshot.getInt();
+		final int wordCount = snapshot.getInt();
+		for(int iWord = 0; iWord < wordCount; iWord++) {
+			final Entry entry = new Entry();
+			entry.mDeleted = snapshot.get() != 0;
+			entry.mCount = snapshot.getInt();
+			final byte[] word = new byte[snapshot.getShort()];
+			snapshot.get(word);
+			mEntries.put(new String(word, StandardCharsets.UTF_8), entry);
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Applies the journal's records, if it's newer than the snapshot, and truncates a
+	 * partly written record at its end.
+	 */
+	private void readJournal() throws IOException {
+		if(!mJournalFile.exists()) {
+			return;
+		}
+
+		long validSize = 0;
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mJournalFile)))) {
+			if(in.readInt() != JOURNAL_MAGIC || in.readInt() != VERSION) {
+				// Start over, so the records appended from now on can be read
+				Log.e(KeyboardApp.LOG_TAG, "Corrupt journal " + mJournalFile);
+				writeJournalHeader(mJournalFile, mGeneration);
+				return;
+			}
+
+			final long generation = in.readLong();
+			if(generation < mGeneration) {
+				// Already in the snapshot. Compaction died before starting the next journal.
+				writeJournalHeader(mJournalFile, mGeneration);
+				return;
+			}
+			mGeneration = generation;
+			validSize = HEADER_SIZE;
+
+			final byte[] record = new byte[1 + 4 + 2 + MAX_WORD_BYTES];
+			while(true) {
+				try {
+					in.readFully(record, 0, 7);
+					final ByteBuffer header = ByteBuffer.wrap(record, 0, 7);
+					final byte op = header.get();
+					final int count = header.getInt();
+					final int length = header.getShort();
+					if(length < 0 || (op != OP_INCREMENT && op != OP_DELETE)) {
+						break;
+					}
+					in.readFully(record, 7, length);
+					if(in.readInt() != crc(record, 7 + length)) {
+						break;
+					}
+
+					apply(op, new String(record, 7, length, StandardCharsets.UTF_8), count);
+					validSize += 7 + length + 4;
+				} catch (EOFException e) {
+					break;
+				}
+			}
+		} catch (EOFException e) {
+			// Shorter than its header
+			Log.e(KeyboardApp.LOG_TAG, "Corrupt journal " + mJournalFile);
+			writeJournalHeader(mJournalFile, mGeneration);
+			return;
+		}
+
+		if(validSize < mJournalFile.length()) {
+			Log.e(KeyboardApp.LOG_TAG, "Dropped " + (mJournalFile.length() - validSize) + " bytes from " + mJournalFile);
+			try(RandomAccessFile file = new RandomAccessFile(mJournalFile, "rw")) {
+				file.setLength(validSize);
+			}
+		}
+	}
+
+
+	private static int crc(final byte[] bytes, final int length) {
+		final CRC32 crc = new CRC32();
+		crc.update(bytes, 0, length);
+
+		return (int) crc.getValue();
+	}
+}
@@ -0,0 +1,154 @@
+package com.comet.keyboard.dictionary;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How much of a dictionary has been loaded and can be searched, and how long each milestone
+ * took to reach. A dictionary loaded from the dictionary DB reaches FIRST_WORDS and HALF
+ * as it goes. One that's mapped from an image goes straight to COMPLETE.
+ *
+ * @author Barry Fruitman
+ */
+public final class LoadProgress {
+	public static final int NOT_LOADED = 0;
+	// The most frequent words can be searched
+	public static final int FIRST_WORDS = 1;
+	// The most frequent half of the words can be searched
+	public static final int HALF = 2;
+	// Loading is done
+	public static final int COMPLETE = 3;
+
+	private long mStartTime = 0;
+	private final long[] mMilestoneTimes = new long[COMPLETE + 1];
+	private int mMilestone = NOT_LOADED;
+	private int mLoadedCount = 0;
+	private int mTotalCount = 0;
+	private final CopyOnWriteArrayList<Listener> mListeners = new CopyOnWriteArrayList<>();
+
+
+	LoadProgress() {
+		Arrays.fill(mMilestoneTimes, -1);
+	}
+
+
+	/**
+	 * Listens for the milestones of loading a dictionary.
+	 */
+	public interface Listener {
+		/**
+		 * Called on the loading thread when a milestone is reached.
+		 */
+		void onLoadProgress(LoadProgress progress);
+	}
+
+
+	public void addListener(final Listener listener) {
+		mListeners.add(listener);
+	}
+
+
+	public void removeListener(final Listener listener) {
+		mListeners.remove(listener);
+	}
+
+
+	synchronized void onLoadStarted() {
+		mStartTime = System.nanoTime();
+	}
+
+
+	/**
+	 * Records a milestone and tells the listeners.
+	 * @param milestone		The milestone reached, e.g. FIRST_WORDS
+	 * @param loadedCount	The number of words loaded so far
+	 * @param totalCount	The number of words being loaded
+	 */
+	void onMilestone(final int milestone, final int loadedCount, final int totalCount) {
+		synchronized(this) {
+			mMilestoneTimes[milestone] = System.nanoTime() - mStartTime;
+			mMilestone = milestone;
+			mLoadedCount = loadedCount;
+			mTotalCount = totalCount;
+		}
+
+		notifyListeners();
+	}
+
+
+	/**
+	 * Records that loading is done and tells the listeners.
+	 */
+	void onLoadComplete() {
+		synchronized(this) {
+			mMilestoneTimes[COMPLETE] = System.nanoTime() - mStartTime;
+			mMilestone = COMPLETE;
+			mLoadedCount = mTotalCount;
+		}
+
+		notifyListeners();
+	}
+
+
+	private void notifyListeners() {
+		for(Listener listener : mListeners) {
+			listener.onLoadProgress(this);
+		}
+	}
+
+
+	public synchronized int getMilestone() {
+		return mMilestone;
+	}
+
+
+	public synchronized boolean isComplete() {
+		return mMilestone == COMPLETE;
+	}
+
+
+	/**
+	 * @return	The number of words loaded from the dictionary DB so far. 0 if the dictionary
+	 * 			was mapped from an image.
+	 */
+	public synchronized int getLoadedCount() {
+		return mLoadedCount;
+	}
+
+
+	/**
+	 * @return	The loaded fraction of the words, from 0 to 1
+	 */
+	public synchronized float getFraction() {
+		if(mMilestone == COMPLETE) {
+			return 1;
+		}
+
+		return mTotalCount == 0 ? 0 : (float) mLoadedCount / mTotalCount;
+	}
+
+
+	/**
+	 * @param milestone	The milestone, e.g. FIRST_WORDS
+	 * @return			The time from the start of loading to the milestone, in milliseconds,
+	 * 					or -1 if it wasn't reached.
+	 */
+	public synchronized long getMillisTo(final int milestone) {
+		return mMilestoneTimes[milestone] < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(mMilestoneTimes[milestone]);
+	}
+
+
+	@Override
+	public synchronized String toString() {
+		return String.format(Locale.US,
+				"LoadProgress(milestone=%d, words=%d/%d, first=%dms, half=%dms, complete=%dms)",
+				mMilestone,
+				mLoadedCount,
+				mTotalCount,
+				getMillisTo(FIRST_WORDS),
+				getMillisTo(HALF),
+				getMillisTo(COMPLETE));
+	}
+}
@@ -6,7 +6,6 @@
 
 package com.comet.keyboard.dictionary;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
@@ -15,22 +14,27 @@ import android.util.Log;
 
 import com.comet.keyboard.KeyboardApp;
 import com.comet.keyboard.R;
+import com.comet.keyboard.dictionary.radixtrie.CompactTrie;
 import com.comet.keyboard.util.ProfileTracer;
 
-import junit.framework.Assert;
-
-import java.util.Comparator;
+import java.io.File;
+import java.util.Arrays;
 import java.util.Locale;
 
-import static android.database.sqlite.SQLiteDatabase.CONFLICT_REPLACE;
-
 
 public class LookAheadDictionary
 		extends TrieDictionary<LookAheadDictionary.LookAheadSuggestion, LookAheadDictionary.LookAheadSuggestionsRequest> {
 
 
 	private static LookAheadDictionary mLoadingLexicon = null;
+	private static final String JOURNAL_EXT = ".lookahead";
+
 	private LookAheadDictionaryDB mLookAheadDB;
+	private volatile LearningJournal mJournal;
+	// The bi- and tri-grams. The base trie only has the words that start a bigram, with the
+	// counts of their bigrams' contexts. N-grams learned that aren't in the model are in the
+	// overlay, keyed by "word1 word2" and "word1 word2 word3".
+	private volatile NGramModel mModel = null;
 
 	LookAheadDictionary(Context context, KeyCollator collator) {
 		super(context, collator);
@@ -56,38 +60,244 @@ public class LookAheadDictionary
 			return;
 		}
 
-		// Load lexicon from DB
 		mLookAheadDB = new LookAheadDictionaryDB(mContext, mCollator.getLanguageCode());
+
+		// Use the pre-built image if there is one. It's mapped and used in place.
+		if (loadDictionaryFromImage(DictionaryImage.SECTION_LOOKAHEAD)) {
+			setCountSum(getCountSum() + loadLearnedNGrams());
+			return;
+		}
+
+		// Otherwise use the image cached the last time the DB was loaded
+		final File cacheFile = getCacheImageFile(DictionaryImage.SECTION_LOOKAHEAD);
+		if (loadDictionaryFromImage(cacheFile, DictionaryImage.SECTION_LOOKAHEAD)) {
+			setCountSum(getCountSum() + loadLearnedNGrams());
+			return;
+		}
+
+		// Load lexicon from DB
 		final ProfileTracer tracer = new ProfileTracer();
 
 		tracer.log("LookAheadDictionary.loadLexicon()...");
 
-		setCountSum(mLookAheadDB.loadDictionaryFromDB(this, -1));
+		final NGramModel.Builder builder = new NGramModel.Builder();
+		mLookAheadDB.loadDictionaryFromDB(this, builder);
+		final NGramModel model = builder.build();
 
 		tracer.log("LookAheadDictionary.loadLexicon(): ...done populating");
+
+		setModel(model, model.compileContextWords(), builder.getCountSum());
+
+		tracer.log("LookAheadDictionary.loadLexicon(): ...done compacting " + model);
+
+		writeCacheImage(cacheFile, DictionaryImage.SECTION_LOOKAHEAD, model);
+
+		// Merge in the n-grams learned on this device
+		setCountSum(getCountSum() + loadLearnedNGrams());
+	}
+
+
+	/**
+	 * Replays the n-grams learned on this device on top of the model. The ones learned before
+	 * there was a journal were written to the DB, so they're already loaded.
+	 * @return	The sum of the learned counts
+	 */
+	private int loadLearnedNGrams() {
+		final LearningJournal journal =
+				new LearningJournal(mContext.getDatabasePath(mCollator.getLanguageCode() + JOURNAL_EXT));
+		final int countSum = journal.replay(this);
+		mJournal = journal;
+
+		return countSum;
+	}
+
+
+	@Override
+	boolean onImageOpened(final DictionaryImage image) {
+		final NGramModel model = image.getNGrams();
+		if (model == null) {
+			return false;
+		}
+
+		// Published before the base trie, so a search that matches a context word finds its n-grams
+		mModel = model;
+
+		return true;
 	}
 
 
+	private synchronized void setModel(final NGramModel model, final CompactTrie contextWords, final int countSum) {
+		mModel = model;
+		setBase(contextWords);
+		setCountSum(countSum);
+	}
+
+
+	/**
+	 * The session isn't used. Look-ahead searches start after a prefix, not at the root.
+	 */
 	@Override
-	public Suggestions<LookAheadSuggestion> getSuggestions(LookAheadSuggestionsRequest request) {
+	Suggestions<LookAheadSuggestion> getSuggestions(LookAheadSuggestionsRequest request, SearchSession session) {
 		final ArraySuggestions<LookAheadSuggestion> suggestions =
 				new ArraySuggestions<>(request);
 
+		final NGramModel model = mModel;
+		final Suggestions<LookAheadSuggestion> matches1 = getMatches(request.getPrefix1());
+		if (model != null) {
+			final NGramModel.NextWords nextWords = new NGramModel.NextWords(model);
+			final NGramModel.Table bigrams = model.getBigrams();
+			final NGramModel.Table trigrams = model.getTrigrams();
+
+			// The words before the composing match the contexts of the trigrams...
+			final long[] contexts = findTrigramContexts(model, nextWords, request);
+			for (final long context : contexts) {
+				final int iContext = (int) context;
+				addNextWords(suggestions, request, nextWords, trigrams, iContext, trigrams.getContextCount(iContext));
+			}
+
+			// ...and the last word matches the contexts of the bigrams
+			for (final LookAheadSuggestion match : matches1) {
+				final int iContext = bigrams.find(NGramModel.getContext(model.getWordId(match.getWord())));
+				if (iContext >= 0) {
+					addNextWords(suggestions, request, nextWords, bigrams, iContext, match.getCount());
+				}
+			}
+		}
+
+		if (!isOverlayEmpty()) {
+			addLearnedSuggestions(suggestions, request, matches1);
+		}
+
+		return findConjoinedBiGrams(suggestions);
+	}
+
+
+	/**
+	 * Finds the trigram contexts that match the two words before the composing, i.e. the
+	 * bigrams whose first word matches word1 and whose second word matches word2.
+	 * @return	The indexes of the contexts in the low ints, highest count first.
+	 */
+	private long[] findTrigramContexts(
+			final NGramModel model,
+			final NGramModel.NextWords nextWords,
+			final LookAheadSuggestionsRequest request) {
+		if (request.mWord1.length() == 0 || request.mWord2.length() == 0) {
+			return new long[0];
+		}
+
+		final NGramModel.Table bigrams = model.getBigrams();
+		final NGramModel.Table trigrams = model.getTrigrams();
+		final SuggestionsRequest matchRequest = new SuggestionsRequest(request.mWord2);
+
+		long[] contexts = new long[4];
+		int contextCount = 0;
+		for (final LookAheadSuggestion match1 : getMatches(request.mWord1)) {
+			final int word1 = model.getWordId(match1.getWord());
+			final int iBigrams = bigrams.find(NGramModel.getContext(word1));
+			if (iBigrams < 0) {
+				continue;
+			}
+
+			// Match word2 to the words that follow word1
+			nextWords.setContext(bigrams, iBigrams);
+			final Suggestions<LookAheadSuggestion> matches2 = createSuggestions(matchRequest);
+			final TrieSearch<LookAheadSuggestion> search = new TrieSearch<>(
+					this, matches2, 0, getCountSum(), 0, null, SuggestionsRequest.NO_DEADLINE);
+			search.search(nextWords, nextWords.getRoot(), 1);
+			search.finish();
+
+			for (final LookAheadSuggestion match2 : matches2) {
+				final int iContext = trigrams.find(NGramModel.getContext(word1, model.getWordId(match2.getWord())));
+				if (iContext >= 0) {
+					if (contextCount == contexts.length) {
+						contexts = Arrays.copyOf(contexts, contextCount * 2);
+					}
+					// Sort by count, highest first
+					contexts[contextCount++] = ((long) (Integer.MAX_VALUE - trigrams.getContextCount(iContext)) << 32) | iContext;
+				}
+			}
+		}
+
+		contexts = Arrays.copyOf(contexts, contextCount);
+		Arrays.sort(contexts);
+
+		return contexts;
+	}
+
+
+	/**
+	 * Adds the words that follow a context and match the composing.
+	 */
+	private void addNextWords(
+			final ArraySuggestions<LookAheadSuggestion> suggestions,
+			final LookAheadSuggestionsRequest request,
+			final NGramModel.NextWords nextWords,
+			final NGramModel.Table table,
+			final int iContext,
+			final int countSum) {
+		nextWords.setContext(table, iContext);
+
+		final String composing = request.getComposing();
+		final Suggestions<LookAheadSuggestion> next = createSuggestions(request);
+		final TrieSearch<LookAheadSuggestion> search = new TrieSearch<>(
+				this,
+				next,
+				0,
+				countSum,
+				composing.length() == 0 ? 8 : EditDistance.getMaxEditDistance(composing),
+				null,
+				SuggestionsRequest.NO_DEADLINE);
+		search.search(nextWords, nextWords.getRoot(), 1);
+		search.finish();
+
+		suggestions.addAll(next);
+	}
+
+
+	/**
+	 * Adds the suggestions after the n-grams that were learned but aren't in the model.
+	 */
+	private void addLearnedSuggestions(
+			final ArraySuggestions<LookAheadSuggestion> suggestions,
+			final LookAheadSuggestionsRequest request,
+			final Suggestions<LookAheadSuggestion> matches1) {
 		final Suggestions<LookAheadSuggestion> matches2 = getMatches(request.getPrefix2());
 		for (final LookAheadSuggestion match : matches2) {
 			suggestions.addAll(getSuggestionsAfterPrefix(
-					new SortedSuggestions<>(request, getComparator()),
+					createSuggestions(request),
 					match.getWord() + " ", match.getCount()));
 		}
 
-		final Suggestions<LookAheadSuggestion> matches1 = getMatches(request.getPrefix1());
 		for (final LookAheadSuggestion match : matches1) {
 			suggestions.addAll(getSuggestionsAfterPrefix(
-					new SortedSuggestions<>(request, getComparator()),
+					createSuggestions(request),
 					match.getWord() + " ", match.getCount()));
 		}
+	}
 
-		return findConjoinedBiGrams(suggestions);
+
+	@Override
+	int getCount(final String ngram) {
+		final NGramModel model = mModel;
+		final int count = model != null ? model.getCount(ngram) : -1;
+
+		return count >= 0 ? count : super.getCount(ngram);
+	}
+
+
+	/**
+	 * N-grams in the model are updated in place. Other n-grams are added to the overlay.
+	 * Single words are in the model and the base trie, so both are updated.
+	 */
+	@Override
+	synchronized void insert(final String ngram, final int count) {
+		final NGramModel model = mModel;
+		if (model != null && model.setCount(ngram, count) && ngram.indexOf(' ') >= 0) {
+			onWordChanged(ngram);
+			return;
+		}
+
+		super.insert(ngram, count);
 	}
 
 
@@ -143,6 +353,37 @@ public class LookAheadDictionary
 	}
 
 
+	/**
+	 * An n-gram can change the suggestions after a prefix if it starts with a match of the
+	 * prefix, since it is either the prefix (whose count is the sum of its suggestions' counts)
+	 * or a suggestion after it. It can also be a conjoined bi-gram of the composing.
+	 */
+	@Override
+	boolean canSuggest(final LookAheadSuggestionsRequest request, final String ngram) {
+		return startsWithMatch(ngram, request.getPrefix1())
+				|| startsWithMatch(ngram, request.getPrefix2())
+				|| (request.getComposing().length() >= 5
+						&& ngram.split(" ").length == 2
+						&& ngram.replace(" ", "").equals(request.getComposing()));
+	}
+
+
+	private boolean startsWithMatch(final String ngram, final String prefix) {
+		final int prefixWords = prefix.split(" ").length;
+		final String[] words = ngram.split(" ");
+		if(words.length < prefixWords) {
+			return false;
+		}
+
+		final StringBuilder head = new StringBuilder(words[0]);
+		for(int iWord = 1; iWord < prefixWords; iWord++) {
+			head.append(' ').append(words[iWord]);
+		}
+
+		return canMatch(prefix, head.toString(), 0);
+	}
+
+
 	@Override
 	protected void addSuggestion(
 			final Suggestions<LookAheadSuggestion> suggestions,
@@ -196,9 +437,9 @@ public class LookAheadDictionary
 
 
 	@Override
-	final void incrementDb(final String trigram, final int count) {
-		// Write to db
-		mLookAheadDB.addTriGramToLookAhead(trigram, count);
+	final void incrementDb(final String ngram, final int increment) {
+		// Write to the journal
+		mJournal.increment(ngram, increment);
 	}
 
 
@@ -216,7 +457,7 @@ public class LookAheadDictionary
 				final SuggestionsRequest request,
 				final String word1,
 				final String word2) {
-			super(request.getComposing());
+			super(request);
 
 			mWord1 = word1;
 			mWord2 = word2;
@@ -229,6 +470,11 @@ public class LookAheadDictionary
 		String getPrefix2() {
 			return mWord1 + " " + mWord2;
 		}
+
+		@Override
+		String getCacheKey() {
+			return getComposing() + "\n" + getPrefix2();
+		}
 	}
 
 
@@ -289,28 +535,11 @@ public class LookAheadDictionary
 
 
 	@Override
-	protected Comparator<LookAheadSuggestion> getComparator() {
-		return mComparator;
+	final double getScore(final LookAheadSuggestion suggestion) {
+		return suggestion.getScore();
 	}
 
 
-	private final Comparator<LookAheadSuggestion> mComparator = new Comparator<LookAheadSuggestion>() {
-		@Override
-		public int compare(LookAheadSuggestion suggestion1, LookAheadSuggestion suggestion2) {
-			// Compare scores
-			final double score = suggestion1.getScore();
-			final double otherScore = suggestion2.getScore();
-
-			if (score == otherScore) {
-				return suggestion1.getWord().compareTo(suggestion2.getWord());
-			}
-
-			// Return the comparison
-			return score < otherScore ? -1 : 1;
-		}
-	};
-
-
 	/**
 	 * @author Barry
 	 */
@@ -323,53 +552,6 @@ public class LookAheadDictionary
 		private static final String LOOKAHEAD_FIELD_WORD3 = "word3";
 		private static final String LOOKAHEAD_FIELD_COUNT = "count";
 
-		boolean addTriGramToLookAhead(String trigram, int count) {
-			final String word1, word2, word3;
-			final String words[] = trigram.split(" ");
-			if (words.length != 3) {
-				return false;
-			} else {
-				word1 = words[0];
-				word2 = words[1];
-				word3 = words[2];
-			}
-
-			Assert.assertTrue(word1 != null);
-			Assert.assertTrue(word2 != null);
-			Assert.assertTrue(word3 != null);
-			Assert.assertTrue(count > 0);
-
-			try {
-				final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
-				// Append new shortcut item to database
-				final ContentValues values = new ContentValues();
-				values.put(LOOKAHEAD_FIELD_WORD1, word1);
-				values.put(LOOKAHEAD_FIELD_WORD2, word2);
-				values.put(LOOKAHEAD_FIELD_WORD3, word3);
-				values.put(LOOKAHEAD_FIELD_COUNT, count);
-
-				final String whereClause =
-						String.format("%s=? AND %s=? AND %s=?",
-								LOOKAHEAD_FIELD_WORD1,
-								LOOKAHEAD_FIELD_WORD2,
-								LOOKAHEAD_FIELD_WORD3);
-				long result = db.update(LOOKAHEAD_TABLE_NAME, values, whereClause, new String[]{word1, word2, word3});
-				if (result == 0) {
-					result = db.insertWithOnConflict(LOOKAHEAD_TABLE_NAME, null, values, CONFLICT_REPLACE);
-					if (result == -1) {
-						return false;
-					}
-				}
-			} catch (SQLiteException e) {
-				Log.e(KeyboardApp.LOG_TAG, "Failed to add word to " + LOOKAHEAD_TABLE_NAME, e);
-				return false;
-			} finally {
-				mOpenHelper.close();
-			}
-
-			return true;
-		}
-
 
 		LookAheadDictionaryDB(Context context, String language) {
 			super(context, language);
@@ -377,69 +559,33 @@ public class LookAheadDictionary
 
 
 		/**
-		 * Load an n-gram set from a table into a trie
+		 * Loads the trigrams from a table into a model builder, in a single scan. The DB is
+		 * only read. It's replaced whole by updates, and the cached image is only valid while
+		 * the DB is unchanged. The builder sums the counts of the bigrams and first words, and
+		 * the sums are kept in the image's n-grams, so they're only summed once per DB.
 		 *
-		 * @param lookAhead The trie to fill
-		 * @param nRecords  The maximum number of records to load
+		 * @param lookAhead The dictionary being loaded
+		 * @param builder   The model builder to fill
 		 * @return The sum of all counts
 		 */
-		public final int loadDictionaryFromDB(TrieDictionary lookAhead, int nRecords) {
-			final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+		final int loadDictionaryFromDB(TrieDictionary lookAhead, NGramModel.Builder builder) {
+			final SQLiteDatabase db = mOpenHelper.getReadableDatabase();
 
 			if (db == null) {
 				return 0;
 			}
 
-			int countSum = 0;
 			try {
-				// Compute 1-gram sums
-				final String limit = nRecords > 0 ? String.valueOf(nRecords) : null;
-				Cursor cursor = db.query("trigrams", new String[] {"word1", "SUM(count) AS count"}, null,
-						null, "word1", null, "count DESC", limit);
+				final Cursor cursor = db.query(LOOKAHEAD_TABLE_NAME,
+						new String[] {LOOKAHEAD_FIELD_WORD1, LOOKAHEAD_FIELD_WORD2, LOOKAHEAD_FIELD_WORD3, LOOKAHEAD_FIELD_COUNT},
+						null, null, null, null, null);
 				if (cursor == null) {
 					return 0;
 				}
 
+				// Duplicate trigrams keep the lowest count. See NGramModel.Builder.
 				while (cursor.moveToNext() && !lookAhead.isCancelled()) {
-					String word1 = cursor.getString(0);
-					final int count = cursor.getInt(1);
-
-					lookAhead.insert(word1, count);
-				}
-				cursor.close();
-
-				// Compute 2-gram sums
-				cursor = db.query("trigrams", new String[] {"word1", "word2", "SUM(count) AS count"}, null,
-						null, "word1,word2", null, "count DESC", limit);
-				if (cursor == null) {
-					return 0;
-				}
-
-				while (cursor.moveToNext() && !lookAhead.isCancelled()) {
-					String word1 = cursor.getString(0);
-					String word2 = cursor.getString(1);
-					int count = cursor.getInt(2);
-
-					lookAhead.insert(word1 + " " + word2, count);
-				}
-				cursor.close();
-
-
-				// Load 3-grams
-				cursor = db.query("trigrams", new String[] {"word1", "word2", "word3", "count"}, null,
-						null, null, null, "count DESC", limit);
-				if (cursor == null) {
-					return 0;
-				}
-
-				while (cursor.moveToNext() && !lookAhead.isCancelled()) {
-					String word1 = cursor.getString(0);
-					String word2 = cursor.getString(1);
-					String word3 = cursor.getString(2);
-					int count = cursor.getInt(3);
-					countSum += count;
-
-					lookAhead.insert(word1 + " " + word2 + " " + word3, count);
+					builder.add(cursor.getString(0), cursor.getString(1), cursor.getString(2), cursor.getInt(3));
 				}
 				cursor.close();
 
@@ -449,7 +595,7 @@ public class LookAheadDictionary
 				mOpenHelper.close();
 			}
 
-			return countSum;
+			return builder.getCountSum();
 		}
 	}
 }
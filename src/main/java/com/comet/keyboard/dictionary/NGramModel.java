@@ -0,0 +1,859 @@
+package com.comet.keyboard.dictionary;
+
+import com.comet.keyboard.dictionary.radixtrie.CompactTrie;
+import com.comet.keyboard.dictionary.radixtrie.RadixTrie;
+import com.comet.keyboard.dictionary.radixtrie.Trie;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+
+/**
+ * The words that follow each word and each pair of words, with their counts, for
+ * look-ahead suggestions. Words are int IDs into a sorted vocabulary, and the bigrams and
+ * trigrams are kept in sorted primitive arrays, so finding the words that follow a context
+ * is a binary search and no strings are built.
+ *
+ * <pre>
+ * Model:  int word count, int char count, int[word count + 1] word starts,
+ *         bigram table, trigram table, char[char count] words
+ * Table:  int context count, int n-gram count, long[context count] contexts,
+ *         int[context count] context counts, int[context count + 1] first n-grams,
+ *         int[n-gram count] next words, int[n-gram count] counts
+ * </pre>
+ *
+ * Bigrams are keyed by the ID of their first word and trigrams by the IDs of their first two
+ * (see {@link #getContext(int, int)}). The next words of each context are sorted by count,
+ * highest first. Like {@link CompactTrie}, the arrays are held in buffers so a model can be
+ * used in place from a memory-mapped image, and only the counts can change.
+ *
+ * @author Barry Fruitman
+ */
+public final class NGramModel {
+	private static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	// Word i is mChars[mWordStarts[i], mWordStarts[i+1]). Words are sorted by String.compareTo().
+	private final IntBuffer mWordStarts;
+	private final CharBuffer mChars;
+	private final int mWordCount;
+	private final Table mBigrams;
+	private final Table mTrigrams;
+
+
+	private NGramModel(IntBuffer wordStarts, CharBuffer chars, Table bigrams, Table trigrams) {
+		mWordStarts = wordStarts;
+		mChars = chars;
+		mWordCount = wordStarts.capacity() - 1;
+		mBigrams = bigrams;
+		mTrigrams = trigrams;
+	}
+
+
+	/**
+	 * @return	The bigrams, keyed by getContext(word1).
+	 */
+	public Table getBigrams() {
+		return mBigrams;
+	}
+
+
+	/**
+	 * @return	The trigrams, keyed by getContext(word1, word2). The count of each context is
+	 * 			the count of its bigram.
+	 */
+	public Table getTrigrams() {
+		return mTrigrams;
+	}
+
+
+	public static long getContext(int word1) {
+		return word1;
+	}
+
+
+	public static long getContext(int word1, int word2) {
+		return ((long) word1 << 32) | word2;
+	}
+
+
+	/**
+	 * @return	The number of words in the vocabulary.
+	 */
+	public int getWordCount() {
+		return mWordCount;
+	}
+
+
+	/**
+	 * Finds a word in the vocabulary. The match is exact.
+	 * @param word	The chars to find
+	 * @param start	The start of the word in chars
+	 * @param end	The end of the word in chars
+	 * @return		The word's ID, or -1 if it isn't in the vocabulary.
+	 */
+	public int getWordId(CharSequence word, int start, int end) {
+		int low = 0;
+		int high = mWordCount - 1;
+		while(low <= high) {
+			final int mid = (low + high) >>> 1;
+			final int compare = compareWord(mid, word, start, end);
+			if(compare < 0)
+				low = mid + 1;
+			else if(compare > 0)
+				high = mid - 1;
+			else
+				return mid;
+		}
+
+		return -1;
+	}
+
+
+	public int getWordId(CharSequence word) {
+		return getWordId(word, 0, word.length());
+	}
+
+
+	/**
+	 * Compares a word in the vocabulary to chars, like String.compareTo().
+	 */
+	private int compareWord(int id, CharSequence word, int start, int end) {
+		final int wordStart = mWordStarts.get(id);
+		final int length = mWordStarts.get(id + 1) - wordStart;
+		final int n = Math.min(length, end - start);
+		for(int i = 0; i < n; i++) {
+			final char c = mChars.get(wordStart + i);
+			if(c != word.charAt(start + i))
+				return c - word.charAt(start + i);
+		}
+
+		return length - (end - start);
+	}
+
+
+	public int getWordLength(int id) {
+		return mWordStarts.get(id + 1) - mWordStarts.get(id);
+	}
+
+
+	public char getCharAt(int id, int i) {
+		return mChars.get(mWordStarts.get(id) + i);
+	}
+
+
+	public String getWord(int id) {
+		final char[] word = new char[getWordLength(id)];
+		final int start = mWordStarts.get(id);
+		for(int i = 0; i < word.length; i++) {
+			word[i] = mChars.get(start + i);
+		}
+
+		return new String(word);
+	}
+
+
+	/**
+	 * @param ngram	One to three words separated by spaces
+	 * @return		The count of the n-gram, or -1 if it isn't in this model. The count of a
+	 * 				single word is the count of its bigrams' context.
+	 */
+	public int getCount(String ngram) {
+		final long location = find(ngram);
+		if(location == NOT_FOUND) {
+			return -1;
+		}
+
+		final Table table = getTable(location);
+		final int index = (int) location;
+
+		return isContext(location) ? table.getContextCount(index) : table.getCount(index);
+	}
+
+
+	/**
+	 * Sets the count of an n-gram that is in this model. The count of a bigram is also the
+	 * count of its trigrams' context, so both are set.
+	 * @param ngram	One to three words separated by spaces
+	 * @param count	The new count
+	 * @return		False if the n-gram isn't in this model.
+	 */
+	public boolean setCount(String ngram, int count) {
+		final long location = find(ngram);
+		if(location == NOT_FOUND) {
+			return false;
+		}
+
+		final Table table = getTable(location);
+		final int index = (int) location;
+		if(isContext(location)) {
+			table.setContextCount(index, count);
+		} else {
+			setCount(table, index, count);
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Sets the count of the n-gram at index in table, and of its trigrams' context if it's
+	 * a bigram.
+	 */
+	private void setCount(Table table, int index, int count) {
+		table.setCount(index, count);
+		if(table == mBigrams) {
+			final int iContext = mTrigrams.find(getContext(
+					findContextWord(mBigrams, index), mBigrams.getWord(index)));
+			if(iContext >= 0) {
+				mTrigrams.setContextCount(iContext, count);
+			}
+		}
+	}
+
+
+	// Where an n-gram is: a bit for the table, a bit for context or n-gram, and the index.
+	private static final long NOT_FOUND = -1;
+	private static final long TRIGRAMS = 1L << 32;
+	private static final long CONTEXT = 1L << 33;
+
+
+	private Table getTable(long location) {
+		return (location & TRIGRAMS) != 0 ? mTrigrams : mBigrams;
+	}
+
+
+	private static boolean isContext(long location) {
+		return (location & CONTEXT) != 0;
+	}
+
+
+	/**
+	 * Finds an n-gram. A single word is found as a bigram context, a bigram as a bigram and
+	 * a trigram as a trigram.
+	 */
+	private long find(String ngram) {
+		final int space1 = ngram.indexOf(' ');
+		final int word1 = getWordId(ngram, 0, space1 < 0 ? ngram.length() : space1);
+		if(word1 < 0) {
+			return NOT_FOUND;
+		}
+
+		final int iBigrams = mBigrams.find(getContext(word1));
+		if(iBigrams < 0) {
+			return NOT_FOUND;
+		}
+		if(space1 < 0) {
+			return CONTEXT | iBigrams;
+		}
+
+		final int space2 = ngram.indexOf(' ', space1 + 1);
+		final int word2 = getWordId(ngram, space1 + 1, space2 < 0 ? ngram.length() : space2);
+		if(word2 < 0) {
+			return NOT_FOUND;
+		}
+		if(space2 < 0) {
+			final int iBigram = mBigrams.find(iBigrams, word2);
+			return iBigram < 0 ? NOT_FOUND : iBigram;
+		}
+
+		final int word3 = getWordId(ngram, space2 + 1, ngram.length());
+		final int iTrigrams = mTrigrams.find(getContext(word1, word2));
+		if(word3 < 0 || iTrigrams < 0) {
+			return NOT_FOUND;
+		}
+
+		final int iTrigram = mTrigrams.find(iTrigrams, word3);
+		return iTrigram < 0 ? NOT_FOUND : TRIGRAMS | iTrigram;
+	}
+
+
+	/**
+	 * @return	The ID of the context word of a bigram.
+	 */
+	private static int findContextWord(Table table, int index) {
+		return (int) table.getContext(table.findContext(index));
+	}
+
+
+	/**
+	 * Builds a trie of the words that start a bigram, with the counts of their bigrams'
+	 * contexts. Look-ahead matches the words before the composing in it.
+	 */
+	public CompactTrie compileContextWords() {
+		final RadixTrie.Builder builder = new RadixTrie.Builder();
+		for(int iContext = 0; iContext < mBigrams.getContextCount(); iContext++) {
+			// Contexts are sorted by word ID, so the words are added in order
+			builder.add(getWord((int) mBigrams.getContext(iContext)), mBigrams.getContextCount(iContext));
+		}
+
+		return CompactTrie.compile(builder.build());
+	}
+
+
+	/**
+	 * Uses a model written by {@link #writeTo(ByteBuffer)} in place. Only the counts are
+	 * copied, so they can still be updated when n-grams are learned.
+	 * @param in	The serialized model, positioned at its start. On return it is positioned
+	 *              after the model.
+	 * @return		The model
+	 * @throws IllegalArgumentException	If in does not hold a valid model.
+	 */
+	public static NGramModel wrap(ByteBuffer in) {
+		in.order(BYTE_ORDER);
+		final int wordCount = in.getInt();
+		final int charCount = in.getInt();
+		if(wordCount < 0 || charCount < 0 || (wordCount + 1) * 4L + charCount * 2L > in.remaining()) {
+			throw new IllegalArgumentException("Invalid n-gram model: " + wordCount + " words, " + charCount + " chars");
+		}
+
+		final IntBuffer wordStarts = sliceInts(in, wordCount + 1);
+		final Table bigrams = Table.wrap(in);
+		final Table trigrams = Table.wrap(in);
+		if(charCount * 2 > in.remaining()) {
+			throw new IllegalArgumentException("Invalid n-gram model: " + charCount + " chars");
+		}
+
+		final ByteBuffer chars = in.slice().order(BYTE_ORDER);
+		chars.limit(charCount * 2);
+		in.position(in.position() + charCount * 2);
+
+		return new NGramModel(wordStarts, chars.asCharBuffer(), bigrams, trigrams);
+	}
+
+
+	/**
+	 * Writes this model in the format read by {@link #wrap(ByteBuffer)}.
+	 * @param out	The buffer to write to. It must have {@link #getByteSize()} bytes remaining.
+	 */
+	public void writeTo(ByteBuffer out) {
+		out.order(BYTE_ORDER);
+		out.putInt(mWordCount);
+		out.putInt(mChars.capacity());
+		putInts(out, mWordStarts);
+		mBigrams.writeTo(out);
+		mTrigrams.writeTo(out);
+		for(int iChar = 0; iChar < mChars.capacity(); iChar++) {
+			out.putChar(mChars.get(iChar));
+		}
+	}
+
+
+	/**
+	 * @return	The number of bytes written by {@link #writeTo(ByteBuffer)}.
+	 */
+	public int getByteSize() {
+		return 8 + (mWordCount + 1) * 4 + mBigrams.getByteSize() + mTrigrams.getByteSize() + mChars.capacity() * 2;
+	}
+
+
+	private static IntBuffer sliceInts(ByteBuffer in, int length) {
+		final ByteBuffer slice = in.slice().order(BYTE_ORDER);
+		slice.limit(length * 4);
+		in.position(in.position() + length * 4);
+
+		return slice.asIntBuffer();
+	}
+
+
+	private static IntBuffer copyInts(ByteBuffer in, int length) {
+		final IntBuffer ints = IntBuffer.allocate(length);
+		ints.put(sliceInts(in, length)).clear();
+
+		return ints;
+	}
+
+
+	private static void putInts(ByteBuffer out, IntBuffer ints) {
+		for(int i = 0; i < ints.capacity(); i++) {
+			out.putInt(ints.get(i));
+		}
+	}
+
+
+	@Override
+	public String toString() {
+		return "NGramModel(" + mWordCount + " words, " + mBigrams.getCount() + " bigrams, "
+				+ mTrigrams.getCount() + " trigrams, " + getByteSize() + " bytes)";
+	}
+
+
+	/**
+	 * The n-grams that follow each context, e.g. the trigrams whose first two words are
+	 * "of the". Contexts are sorted, and the n-grams of context i are
+	 * [getFirst(i), getFirst(i + 1)), highest count first.
+	 */
+	public static final class Table {
+		private final LongBuffer mContexts;
+		private final IntBuffer mContextCounts;
+		private final IntBuffer mFirsts;
+		private final IntBuffer mWords;
+		private final IntBuffer mCounts;
+
+
+		private Table(LongBuffer contexts, IntBuffer contextCounts, IntBuffer firsts, IntBuffer words, IntBuffer counts) {
+			mContexts = contexts;
+			mContextCounts = contextCounts;
+			mFirsts = firsts;
+			mWords = words;
+			mCounts = counts;
+		}
+
+
+		/**
+		 * @return	The index of a context, or -1 if there is none.
+		 */
+		public int find(long context) {
+			int low = 0;
+			int high = mContexts.capacity() - 1;
+			while(low <= high) {
+				final int mid = (low + high) >>> 1;
+				final long value = mContexts.get(mid);
+				if(value < context)
+					low = mid + 1;
+				else if(value > context)
+					high = mid - 1;
+				else
+					return mid;
+			}
+
+			return -1;
+		}
+
+
+		/**
+		 * @return	The index of the n-gram of a context that ends with word, or -1 if there
+		 * 			is none.
+		 */
+		public int find(int iContext, int word) {
+			final int end = getFirst(iContext + 1);
+			for(int index = getFirst(iContext); index < end; index++) {
+				if(mWords.get(index) == word)
+					return index;
+			}
+
+			return -1;
+		}
+
+
+		/**
+		 * @return	The index of the context of an n-gram.
+		 */
+		private int findContext(int index) {
+			int low = 0;
+			int high = mContexts.capacity() - 1;
+			while(low < high) {
+				final int mid = (low + high + 1) >>> 1;
+				if(mFirsts.get(mid) <= index)
+					low = mid;
+				else
+					high = mid - 1;
+			}
+
+			return low;
+		}
+
+
+		public int getContextCount() {
+			return mContexts.capacity();
+		}
+
+
+		public long getContext(int iContext) {
+			return mContexts.get(iContext);
+		}
+
+
+		/**
+		 * @return	The count of a context, i.e. of the (n-1)-gram its n-grams start with.
+		 */
+		public int getContextCount(int iContext) {
+			return mContextCounts.get(iContext);
+		}
+
+
+		void setContextCount(int iContext, int count) {
+			mContextCounts.put(iContext, count);
+		}
+
+
+		public int getFirst(int iContext) {
+			return mFirsts.get(iContext);
+		}
+
+
+		/**
+		 * @return	The number of n-grams in this table.
+		 */
+		public int getCount() {
+			return mWords.capacity();
+		}
+
+
+		/**
+		 * @return	The ID of the last word of an n-gram.
+		 */
+		public int getWord(int index) {
+			return mWords.get(index);
+		}
+
+
+		public int getCount(int index) {
+			return mCounts.get(index);
+		}
+
+
+		/**
+		 * Sets the count of an n-gram. It isn't moved, so the order of its context's n-grams
+		 * by count is only a hint after this, like {@link Trie#getChildByMaxCount}.
+		 */
+		void setCount(int index, int count) {
+			mCounts.put(index, count);
+		}
+
+
+		/**
+		 * Builds a table from n-grams in any order. An n-gram that is added more than once
+		 * keeps its lowest count, but every count is added to its context's count.
+		 * @param contexts	The context of each n-gram
+		 * @param words		The last word of each n-gram
+		 * @param counts	The count of each n-gram
+		 * @param n			The number of n-grams
+		 */
+		private static Table build(long[] contexts, int[] words, int[] counts, int n) {
+			final long[] sorted = Arrays.copyOf(contexts, n);
+			Arrays.sort(sorted);
+			int contextCount = 0;
+			for(int i = 0; i < n; i++) {
+				if(contextCount == 0 || sorted[contextCount - 1] != sorted[i])
+					sorted[contextCount++] = sorted[i];
+			}
+			final long[] uniqueContexts = Arrays.copyOf(sorted, contextCount);
+
+			// Bucket the n-grams by context
+			final int[] contextCounts = new int[contextCount];
+			final int[] firsts = new int[contextCount + 1];
+			final int[] iContexts = new int[n];
+			for(int i = 0; i < n; i++) {
+				iContexts[i] = Arrays.binarySearch(uniqueContexts, contexts[i]);
+				contextCounts[iContexts[i]] += counts[i];
+				firsts[iContexts[i] + 1]++;
+			}
+			for(int iContext = 0; iContext < contextCount; iContext++) {
+				firsts[iContext + 1] += firsts[iContext];
+			}
+			final long[] bucketed = new long[n];
+			final int[] next = Arrays.copyOf(firsts, contextCount);
+			for(int i = 0; i < n; i++) {
+				bucketed[next[iContexts[i]]++] = ((long) words[i] << 32) | counts[i];
+			}
+
+			// Drop duplicates, then sort each context by count, highest first
+			int size = 0;
+			final int[] uniqueFirsts = new int[contextCount + 1];
+			for(int iContext = 0; iContext < contextCount; iContext++) {
+				final int start = size;
+				Arrays.sort(bucketed, firsts[iContext], firsts[iContext + 1]);
+				for(int i = firsts[iContext]; i < firsts[iContext + 1]; i++) {
+					// The lowest count of each word sorts first
+					if(i == firsts[iContext] || (bucketed[i] >>> 32) != (bucketed[i - 1] >>> 32)) {
+						final long ngram = bucketed[i];
+						bucketed[size++] = ((long) (Integer.MAX_VALUE - (int) ngram) << 32) | (ngram >>> 32);
+					}
+				}
+				Arrays.sort(bucketed, start, size);
+				uniqueFirsts[iContext + 1] = size;
+			}
+
+			final int[] uniqueWords = new int[size];
+			final int[] uniqueCounts = new int[size];
+			for(int i = 0; i < size; i++) {
+				uniqueWords[i] = (int) bucketed[i];
+				uniqueCounts[i] = Integer.MAX_VALUE - (int) (bucketed[i] >>> 32);
+			}
+
+			return new Table(
+					LongBuffer.wrap(uniqueContexts),
+					IntBuffer.wrap(contextCounts),
+					IntBuffer.wrap(uniqueFirsts),
+					IntBuffer.wrap(uniqueWords),
+					IntBuffer.wrap(uniqueCounts));
+		}
+
+
+		private static Table wrap(ByteBuffer in) {
+			final int contextCount = in.getInt();
+			final int count = in.getInt();
+			if(contextCount < 0 || count < 0 || getByteSize(contextCount, count) - 8 > in.remaining()) {
+				throw new IllegalArgumentException("Invalid n-gram table: " + contextCount + " contexts, " + count + " n-grams");
+			}
+
+			final ByteBuffer contexts = in.slice().order(BYTE_ORDER);
+			contexts.limit(contextCount * 8);
+			in.position(in.position() + contextCount * 8);
+			final IntBuffer contextCounts = copyInts(in, contextCount);
+			final IntBuffer firsts = sliceInts(in, contextCount + 1);
+			final IntBuffer words = sliceInts(in, count);
+			final IntBuffer counts = copyInts(in, count);
+
+			return new Table(contexts.asLongBuffer(), contextCounts, firsts, words, counts);
+		}
+
+
+		private void writeTo(ByteBuffer out) {
+			out.putInt(mContexts.capacity());
+			out.putInt(mWords.capacity());
+			for(int iContext = 0; iContext < mContexts.capacity(); iContext++) {
+				out.putLong(mContexts.get(iContext));
+			}
+			putInts(out, mContextCounts);
+			putInts(out, mFirsts);
+			putInts(out, mWords);
+			putInts(out, mCounts);
+		}
+
+
+		private int getByteSize() {
+			return getByteSize(mContexts.capacity(), mWords.capacity());
+		}
+
+
+		private static int getByteSize(int contextCount, int count) {
+			return 8 + contextCount * 16 + 4 + count * 8;
+		}
+	}
+
+
+	/**
+	 * A view of the words that follow a context as a trie, so the suggestion search can
+	 * match the composing to them. The root's children are the next words, highest count
+	 * first, and each child's value is a whole word.
+	 */
+	public static final class NextWords implements Trie {
+		private static final int ROOT = 0;
+
+		private final NGramModel mModel;
+		private Table mTable;
+		private int mFirst;
+		private int mCount;
+
+
+		public NextWords(NGramModel model) {
+			mModel = model;
+		}
+
+
+		/**
+		 * Shows the words that follow a context.
+		 * @param table		The table of the context
+		 * @param iContext	The index of the context in table
+		 */
+		public void setContext(Table table, int iContext) {
+			mTable = table;
+			mFirst = table.getFirst(iContext);
+			mCount = table.getFirst(iContext + 1) - mFirst;
+		}
+
+
+		private int getWordId(int node) {
+			return mTable.getWord(mFirst + node - 1);
+		}
+
+
+		@Override
+		public int getRoot() {
+			return ROOT;
+		}
+
+
+		@Override
+		public int getChildCount(int node) {
+			return node == ROOT ? mCount : 0;
+		}
+
+
+		@Override
+		public int getChild(int node, int iChild) {
+			return iChild + 1;
+		}
+
+
+		@Override
+		public int findChild(int node, char c) {
+			// The children aren't sorted by char
+			for(int iChild = 0; iChild < getChildCount(node); iChild++) {
+				final int child = getChild(node, iChild);
+				if(getValueAt(child, 0) == c)
+					return child;
+			}
+
+			return NO_NODE;
+		}
+
+
+		@Override
+		public int getValueLength(int node) {
+			// The root's value is a space, like a RadixTrie's
+			return node == ROOT ? 1 : mModel.getWordLength(getWordId(node));
+		}
+
+
+		@Override
+		public char getValueAt(int node, int iValue) {
+			return node == ROOT ? ' ' : mModel.getCharAt(getWordId(node), iValue);
+		}
+
+
+		@Override
+		public int getCount(int node) {
+			return node == ROOT ? 0 : mTable.getCount(mFirst + node - 1);
+		}
+
+
+		@Override
+		public void setCount(int node, int count) {
+			mModel.setCount(mTable, mFirst + node - 1, count);
+		}
+
+
+		@Override
+		public int getMaxCount(int node) {
+			// The children were sorted by count, but may not be after learning
+			return node == ROOT ? Integer.MAX_VALUE : getCount(node);
+		}
+
+
+		@Override
+		public int getDepth(int node) {
+			return node == ROOT ? 0 : getValueLength(node);
+		}
+
+
+		@Override
+		public String getWord(int node) {
+			return node == ROOT ? "" : mModel.getWord(getWordId(node));
+		}
+	}
+
+
+	/**
+	 * Builds a model from trigrams in any order. Their bigrams are counted from them: the
+	 * count of a bigram is the sum of the counts of the trigrams that start with it.
+	 */
+	public static final class Builder {
+		private final HashMap<String, Integer> mWordIds = new HashMap<>();
+		private final ArrayList<String> mWords = new ArrayList<>();
+		// Four ints per trigram: three word IDs and a count
+		private int[] mTrigrams = new int[1024];
+		private int mTrigramCount = 0;
+		private int mCountSum = 0;
+		private boolean mBuilt = false;
+
+
+		/**
+		 * Adds a trigram.
+		 * @return	This builder
+		 */
+		public Builder add(String word1, String word2, String word3, int count) {
+			if(mBuilt) {
+				throw new IllegalStateException("Model already built");
+			}
+
+			if(mTrigramCount * 4 == mTrigrams.length) {
+				mTrigrams = Arrays.copyOf(mTrigrams, mTrigrams.length * 2);
+			}
+
+			final int iTrigram = mTrigramCount++ * 4;
+			mTrigrams[iTrigram] = getWordId(word1);
+			mTrigrams[iTrigram + 1] = getWordId(word2);
+			mTrigrams[iTrigram + 2] = getWordId(word3);
+			mTrigrams[iTrigram + 3] = count;
+			mCountSum += count;
+
+			return this;
+		}
+
+
+		private int getWordId(String word) {
+			Integer id = mWordIds.get(word);
+			if(id == null) {
+				id = mWords.size();
+				mWordIds.put(word, id);
+				mWords.add(word);
+			}
+
+			return id;
+		}
+
+
+		/**
+		 * @return	The sum of the counts of every trigram added.
+		 */
+		public int getCountSum() {
+			return mCountSum;
+		}
+
+
+		/**
+		 * @return	The model. The builder can't be used after this.
+		 */
+		public NGramModel build() {
+			if(mBuilt) {
+				throw new IllegalStateException("Model already built");
+			}
+			mBuilt = true;
+
+			// Sort the vocabulary and map the words to their sorted IDs
+			final String[] words = mWords.toArray(new String[0]);
+			Arrays.sort(words);
+			final int[] ids = new int[words.length];
+			int charCount = 0;
+			for(int id = 0; id < words.length; id++) {
+				ids[mWordIds.get(words[id])] = id;
+				charCount += words[id].length();
+			}
+
+			final int[] wordStarts = new int[words.length + 1];
+			final char[] chars = new char[charCount];
+			for(int id = 0; id < words.length; id++) {
+				words[id].getChars(0, words[id].length(), chars, wordStarts[id]);
+				wordStarts[id + 1] = wordStarts[id] + words[id].length();
+			}
+
+			final long[] contexts = new long[mTrigramCount];
+			final int[] nextWords = new int[mTrigramCount];
+			final int[] counts = new int[mTrigramCount];
+			for(int iTrigram = 0; iTrigram < mTrigramCount; iTrigram++) {
+				contexts[iTrigram] = getContext(ids[mTrigrams[iTrigram * 4]], ids[mTrigrams[iTrigram * 4 + 1]]);
+				nextWords[iTrigram] = ids[mTrigrams[iTrigram * 4 + 2]];
+				counts[iTrigram] = mTrigrams[iTrigram * 4 + 3];
+			}
+			final Table trigrams = Table.build(contexts, nextWords, counts, mTrigramCount);
+
+			// Each trigram context is a bigram, and its count is the bigram's count
+			final int bigramCount = trigrams.getContextCount();
+			final long[] bigramContexts = new long[bigramCount];
+			final int[] bigramWords = new int[bigramCount];
+			final int[] bigramCounts = new int[bigramCount];
+			for(int iBigram = 0; iBigram < bigramCount; iBigram++) {
+				final long context = trigrams.getContext(iBigram);
+				bigramContexts[iBigram] = getContext((int) (context >>> 32));
+				bigramWords[iBigram] = (int) context;
+				bigramCounts[iBigram] = trigrams.getContextCount(iBigram);
+			}
+			final Table bigrams = Table.build(bigramContexts, bigramWords, bigramCounts, bigramCount);
+
+			mTrigrams = null;
+			mWordIds.clear();
+			mWords.clear();
+
+			return new NGramModel(IntBuffer.wrap(wordStarts), CharBuffer.wrap(chars), bigrams, trigrams);
+		}
+
+	}
+}
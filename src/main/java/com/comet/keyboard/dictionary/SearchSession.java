@@ -0,0 +1,181 @@
+package com.comet.keyboard.dictionary;
+
+import com.comet.keyboard.dictionary.radixtrie.Trie;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Remembers where the fuzzy search for each prefix of the composing word left off, so the
+ * search for the next keystroke doesn't have to start over from the root.
+ *
+ * <p>Each search records its frontier: every state (trie node, position in the node's value,
+ * edit distance and the number of chars matched so far) that is one keystroke from the end of
+ * the composing. When a keystroke is appended, the new search resumes from the frontier of the
+ * previous one. When a keystroke is deleted, the frontiers of the longer words are dropped
+ * and the search resumes from an older one. The session is cleared when the word is committed.
+ *
+ * <p>A frontier is only valid for the tries it was found in and for the max edit distance it
+ * was found with, so it is dropped when either changes.
+ *
+ * @author Barry Fruitman
+ */
+final class SearchSession {
+	private final ArrayList<Frontier> mFrontiers = new ArrayList<>();
+
+
+	/**
+	 * Finds the frontier to resume a search from.
+	 * @param composing		The composing to search for
+	 * @param owner			The dictionary being searched
+	 * @param modCount		The dictionary's current modification count
+	 * @param maxEditDistance	The max edit distance of the search
+	 * @return				The frontier of composing minus its last char, or null if there is none.
+	 */
+	/*package*/ Frontier getFrontier(
+			final String composing,
+			final TrieDictionary<?, ?> owner,
+			final int modCount,
+			final double maxEditDistance) {
+		// Drop every frontier that isn't for a shorter prefix of composing
+		for(int iFrontier = mFrontiers.size() - 1; iFrontier >= 0; iFrontier--) {
+			final Frontier frontier = mFrontiers.get(iFrontier);
+			if(frontier.mOwner == owner
+					&& frontier.mModCount == modCount
+					&& frontier.mComposing.length() < composing.length()
+					&& composing.startsWith(frontier.mComposing)) {
+				break;
+			}
+
+			mFrontiers.remove(iFrontier);
+		}
+
+		if(mFrontiers.isEmpty()) {
+			return null;
+		}
+
+		final Frontier frontier = mFrontiers.get(mFrontiers.size() - 1);
+		if(frontier.mComposing.length() != composing.length() - 1
+				|| frontier.mMaxEditDistance != maxEditDistance) {
+			return null;
+		}
+
+		return frontier;
+	}
+
+
+	/*package*/ void addFrontier(final Frontier frontier) {
+		mFrontiers.add(frontier);
+	}
+
+
+	/**
+	 * Drops every frontier. Called when the composing word is committed.
+	 */
+	public synchronized void clear() {
+		mFrontiers.clear();
+	}
+
+
+	/**
+	 * The search states that are one keystroke from the end of a composing.
+	 */
+	/*package*/ static final class Frontier {
+		private final String mComposing;
+		private final TrieDictionary<?, ?> mOwner;
+		private final int mModCount;
+		private final double mMaxEditDistance;
+
+		private int mSize = 0;
+		private Trie[] mTries = new Trie[16];
+		private int[] mNodes = new int[16];
+		private int[] mValueIndexes = new int[16];
+		private int[] mCosts = new int[16];
+		private int[] mPathLengths = new int[16];
+		// The depth in the trie where the words of the search that found the state start
+		private int[] mWordStarts = new int[16];
+
+
+		/*package*/ Frontier(
+				final String composing,
+				final TrieDictionary<?, ?> owner,
+				final int modCount,
+				final double maxEditDistance) {
+			mComposing = composing;
+			mOwner = owner;
+			mModCount = modCount;
+			mMaxEditDistance = maxEditDistance;
+		}
+
+
+		/**
+		 * Adds a state.
+		 * @param trie			The trie being searched
+		 * @param node			The current node
+		 * @param iNodeValue	The position in the node's value
+		 * @param pathLength	The number of chars matched so far
+		 * @param wordStart		The depth in the trie where the words of the search start
+		 * @param cost			The edit distance so far, in integer units
+		 */
+		/*package*/ void add(
+				final Trie trie,
+				final int node,
+				final int iNodeValue,
+				final int pathLength,
+				final int wordStart,
+				final int cost) {
+			if(mSize == mNodes.length) {
+				final int capacity = mSize * 2;
+				mTries = Arrays.copyOf(mTries, capacity);
+				mNodes = Arrays.copyOf(mNodes, capacity);
+				mValueIndexes = Arrays.copyOf(mValueIndexes, capacity);
+				mCosts = Arrays.copyOf(mCosts, capacity);
+				mPathLengths = Arrays.copyOf(mPathLengths, capacity);
+				mWordStarts = Arrays.copyOf(mWordStarts, capacity);
+			}
+
+			mTries[mSize] = trie;
+			mNodes[mSize] = node;
+			mValueIndexes[mSize] = iNodeValue;
+			mCosts[mSize] = cost;
+			mPathLengths[mSize] = pathLength;
+			mWordStarts[mSize] = wordStart;
+			mSize++;
+		}
+
+
+		/*package*/ int size() {
+			return mSize;
+		}
+
+
+		/*package*/ Trie getTrie(final int iState) {
+			return mTries[iState];
+		}
+
+
+		/*package*/ int getNode(final int iState) {
+			return mNodes[iState];
+		}
+
+
+		/*package*/ int getValueIndex(final int iState) {
+			return mValueIndexes[iState];
+		}
+
+
+		/*package*/ int getCost(final int iState) {
+			return mCosts[iState];
+		}
+
+
+		/*package*/ int getPathLength(final int iState) {
+			return mPathLengths[iState];
+		}
+
+
+		/*package*/ int getWordStart(final int iState) {
+			return mWordStarts[iState];
+		}
+	}
+}
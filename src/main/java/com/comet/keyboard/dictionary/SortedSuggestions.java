@@ -3,24 +3,33 @@ package com.comet.keyboard.dictionary;
 import androidx.annotation.NonNull;
 
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 
 /**
  * Suggestions is a list of suggestions returned by the various dictionaries.
- * The suggestions are sorted using the provided Comparator and truncated to a max size.
+ * The suggestions are sorted by the provided Scorer and truncated to a max size.
  * @author Barry Fruitman
  *
  */
 public class SortedSuggestions<S extends Suggestion> implements Suggestions<S> {
     private final SuggestionsRequest mRequest;
-    private final BoundedPriorityQueue<S> mSuggestions;
+    private final Scorer<S> mScorer;
+    private final SuggestionQueue<S> mSuggestions;
 
 
-    SortedSuggestions(final SuggestionsRequest request, final Comparator<S> comparator) {
+    SortedSuggestions(final SuggestionsRequest request, final Scorer<S> scorer) {
         mRequest = request;
-        mSuggestions = new BoundedPriorityQueue<>(comparator, MAX_SUGGESTIONS);
+        mScorer = scorer;
+        mSuggestions = new SuggestionQueue<>(MAX_SUGGESTIONS);
+    }
+
+
+    /**
+     * Scores suggestions. Lower is better. Suggestions with the same score are sorted by word.
+     */
+    interface Scorer<S extends Suggestion> {
+        double getScore(S suggestion);
     }
 
 
@@ -37,7 +46,12 @@ public class SortedSuggestions<S extends Suggestion> implements Suggestions<S> {
 
     @Override
     public List<S> getSuggestionsList() {
-        return new ArrayList<>(mSuggestions);
+        final ArrayList<S> suggestions = new ArrayList<>(mSuggestions.size());
+        for(final S suggestion : mSuggestions) {
+            suggestions.add(suggestion);
+        }
+
+        return suggestions;
     }
 
 
@@ -55,31 +69,25 @@ public class SortedSuggestions<S extends Suggestion> implements Suggestions<S> {
 
     @Override
     public boolean add(final S suggestion) {
-        if(suggestion == null) {
+        if(suggestion == null || mRequest.isExpired()) {
+            // Nothing to add, or too late
             return false;
         }
 
-        if(mRequest.isExpired()) {
-            // Too late
-            throw new Suggestor.SuggestionsExpiredException();
-        }
-
-        return mSuggestions.offer(suggestion);
+        return mSuggestions.offer(suggestion, mScorer.getScore(suggestion));
     }
 
 
     @Override
     public void addAll(final Suggestions<S> suggestions) {
-        if(suggestions == null) {
+        if(suggestions == null || mRequest.isExpired()) {
+            // Nothing to add, or too late
             return;
         }
 
-        if(mRequest.isExpired()) {
-            // Too late
-            throw new Suggestor.SuggestionsExpiredException();
+        for(final S suggestion : suggestions) {
+            mSuggestions.offer(suggestion, mScorer.getScore(suggestion));
         }
-
-        mSuggestions.offerAll(suggestions.getSuggestionsList());
     }
 
 
@@ -89,7 +97,13 @@ public class SortedSuggestions<S extends Suggestion> implements Suggestions<S> {
     }
 
 
-    public synchronized boolean isExpired() {
+    @Override
+    public S getWorst() {
+        return mSuggestions.size() < mSuggestions.maxSize() ? null : mSuggestions.peekLast();
+    }
+
+
+    public boolean isExpired() {
         return mRequest.isExpired();
     }
 
@@ -7,7 +7,7 @@ import com.comet.keyboard.KeyboardService;
  * @author Barry Fruitman
  *
  */
-public abstract class Suggestion {
+public abstract class Suggestion implements Cloneable {
     private String mWord;
 
 
@@ -35,13 +35,58 @@ public abstract class Suggestion {
     }
 
 
+    /**
+     * @return  A copy of this suggestion that can be changed (e.g. by matchCase()) without
+     *          changing this one.
+     */
+    /*package*/ Suggestion copy() {
+        try {
+            return (Suggestion) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+
+    /**
+     * @return  True if word is the same as this suggestion's word, ignoring case and every char
+     *          except ASCII letters, digits, spaces and hyphens.
+     */
     public boolean matches(final String word) {
-        return normalize(mWord).equalsIgnoreCase(normalize(word));
+        int iWord1 = 0;
+        int iWord2 = 0;
+        while(true) {
+            iWord1 = skipIgnored(mWord, iWord1);
+            iWord2 = skipIgnored(word, iWord2);
+            if(iWord1 == mWord.length() || iWord2 == word.length()) {
+                return iWord1 == mWord.length() && iWord2 == word.length();
+            }
+
+            if(Character.toLowerCase(mWord.charAt(iWord1)) != Character.toLowerCase(word.charAt(iWord2))) {
+                return false;
+            }
+
+            iWord1++;
+            iWord2++;
+        }
+    }
+
+
+    private static int skipIgnored(final String word, int iWord) {
+        while(iWord < word.length() && !isMatched(word.charAt(iWord))) {
+            iWord++;
+        }
+
+        return iWord;
     }
 
 
-    static String normalize(final String word) {
-        return word.replaceAll("[^a-zA-Z0-9 \\-]", "");
+    private static boolean isMatched(final char c) {
+        return (c >= 'a' && c <= 'z')
+                || (c >= 'A' && c <= 'Z')
+                || (c >= '0' && c <= '9')
+                || c == ' '
+                || c == '-';
     }
 
 
@@ -0,0 +1,124 @@
+package com.comet.keyboard.dictionary;
+
+import androidx.annotation.NonNull;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A fixed-size list of the best suggestions offered to it, best first. Suggestions are ranked
+ * by score, lower is better, and then by word. A suggestion with the same score and word as
+ * one that is already in the list is not added.
+ *
+ * <p>The suggestions and their scores are kept in two arrays that are allocated once, so an
+ * offer doesn't allocate anything. Since there are only a few suggestions, the arrays are kept
+ * sorted and the worst suggestion is always the last one.
+ * @author Barry Fruitman
+ */
+final class SuggestionQueue<S extends Suggestion> implements Iterable<S> {
+    private final Suggestion[] mSuggestions;
+    private final double[] mScores;
+    private int mSize = 0;
+
+
+    SuggestionQueue(final int maxSize) {
+        mSuggestions = new Suggestion[maxSize];
+        mScores = new double[maxSize];
+    }
+
+
+    /**
+     * Adds a suggestion if there is room or it is better than the worst one, which is dropped.
+     * @param suggestion    The suggestion to add
+     * @param score         Its score
+     * @return              True if the suggestion was added.
+     */
+    boolean offer(final S suggestion, final double score) {
+        // Find where it goes, starting from the worst
+        int iSuggestion = mSize;
+        for(; iSuggestion > 0; iSuggestion--) {
+            final double otherScore = mScores[iSuggestion - 1];
+            if(otherScore < score) {
+                break;
+            }
+
+            if(otherScore == score) {
+                final int compare = mSuggestions[iSuggestion - 1].getWord().compareTo(suggestion.getWord());
+                if(compare == 0) {
+                    // Already have it
+                    return false;
+                } else if(compare < 0) {
+                    break;
+                }
+            }
+        }
+
+        if(iSuggestion >= mSuggestions.length) {
+            return false;
+        }
+
+        // Make room, dropping the worst if full
+        final int moved = Math.min(mSize, mSuggestions.length - 1) - iSuggestion;
+        System.arraycopy(mSuggestions, iSuggestion, mSuggestions, iSuggestion + 1, moved);
+        System.arraycopy(mScores, iSuggestion, mScores, iSuggestion + 1, moved);
+        mSize = Math.min(mSize + 1, mSuggestions.length);
+
+        mSuggestions[iSuggestion] = suggestion;
+        mScores[iSuggestion] = score;
+
+        return true;
+    }
+
+
+    int size() {
+        return mSize;
+    }
+
+
+    int maxSize() {
+        return mSuggestions.length;
+    }
+
+
+    @SuppressWarnings("unchecked")
+    S get(final int iSuggestion) {
+        if(iSuggestion >= mSize) {
+            throw new IndexOutOfBoundsException("Index: " + iSuggestion + ", Size: " + mSize);
+        }
+
+        return (S) mSuggestions[iSuggestion];
+    }
+
+
+    /**
+     * @return  The worst suggestion, or null if there are none.
+     */
+    S peekLast() {
+        return mSize == 0 ? null : get(mSize - 1);
+    }
+
+
+    @Override
+    @NonNull
+    public Iterator<S> iterator() {
+        return new Iterator<S>() {
+            private int mNext = 0;
+
+
+            @Override
+            public boolean hasNext() {
+                return mNext < mSize;
+            }
+
+
+            @Override
+            public S next() {
+                if(!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                return get(mNext++);
+            }
+        };
+    }
+}
@@ -22,4 +22,11 @@ public interface Suggestions<S extends Suggestion> extends Iterable<S> {
 
 
     int size();
+
+
+    /**
+     * @return  The suggestion a new suggestion must beat to be added, or null if every
+     *          suggestion will be added (e.g. there is still room).
+     */
+    S getWorst();
 }
@@ -3,14 +3,22 @@ package com.comet.keyboard.dictionary;
 import androidx.annotation.NonNull;
 
 class SuggestionsRequest {
-    private boolean mExpired = false;
+    /*package*/ static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    // The cancellation token. Searches poll it and stop when it's set.
+    private volatile boolean mExpired = false;
+    // When the search must return the best suggestions it has found, in System.nanoTime()
+    private volatile long mDeadline = NO_DEADLINE;
+    private volatile boolean mTruncated = false;
     private final String mComposing;
     private final Suggestor.SuggestionsListener mListener;
+    private final SuggestionsRequest mParent;
 
 
     /*package*/ SuggestionsRequest(final String composing) {
         mComposing = composing;
         mListener = null;
+        mParent = null;
     }
 
 
@@ -19,19 +27,66 @@ class SuggestionsRequest {
             @NonNull final Suggestor.SuggestionsListener listener) {
         mComposing = composing;
         mListener = listener;
+        mParent = null;
+    }
+
+
+    /**
+     * A request for part of another request, e.g. for one dictionary, or for another try at
+     * it. It expires with it and has the same listener, but no deadline.
+     */
+    /*package*/ SuggestionsRequest(@NonNull final SuggestionsRequest parent) {
+        mComposing = parent.getComposing();
+        mListener = parent.getListener();
+        mParent = parent;
     }
 
 
     final /*package*/ boolean isExpired() {
-        return mExpired;
+        return mExpired || (mParent != null && mParent.isExpired());
     }
 
 
-    final /*package*/ synchronized void setExpired() {
+    /**
+     * Cancels the request. Searches for it stop at their next check and return what they have,
+     * which the caller discards.
+     */
+    final /*package*/ void setExpired() {
         mExpired = true;
     }
 
 
+    /**
+     * Limits how long the search may take, starting now. When the time is up the search
+     * returns the best suggestions it has found and the request is marked truncated.
+     * @param budget    The time limit, in nanoseconds
+     */
+    final /*package*/ void setBudget(final long budget) {
+        mDeadline = System.nanoTime() + budget;
+    }
+
+
+    /**
+     * @return  When the search must stop, in System.nanoTime(), or NO_DEADLINE.
+     */
+    final /*package*/ long getDeadline() {
+        return mDeadline;
+    }
+
+
+    final /*package*/ void setTruncated() {
+        mTruncated = true;
+    }
+
+
+    /**
+     * @return  True if the search ran out of time, so the suggestions may not be the best ones.
+     */
+    final public boolean isTruncated() {
+        return mTruncated;
+    }
+
+
     final public String getComposing() {
         return mComposing;
     }
@@ -40,4 +95,12 @@ class SuggestionsRequest {
     final public Suggestor.SuggestionsListener getListener() {
         return mListener;
     }
+
+
+    /**
+     * @return  A key that is equal for all requests with the same results.
+     */
+    /*package*/ String getCacheKey() {
+        return mComposing;
+    }
 }
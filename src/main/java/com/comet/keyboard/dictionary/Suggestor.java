@@ -11,13 +11,19 @@ import android.content.SharedPreferences;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Message;
+import android.os.Process;
 import android.util.Log;
 
-import java.io.Serial;
-import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.Iterator;
-import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import com.comet.keyboard.KeyboardApp;
 import com.comet.keyboard.KeyboardService;
@@ -37,12 +43,23 @@ public final class Suggestor {
 	private KeyCollator mCollator;
 	private LanguageDictionary mDicLanguage;
 	private LookAheadDictionary mDicLookAhead;
+	private CacheDictionary<LanguageDictionary.LanguageSuggestion, SuggestionsRequest> mCacheLanguage;
+	private CacheDictionary<LookAheadDictionary.LookAheadSuggestion, LookAheadDictionary.LookAheadSuggestionsRequest> mCacheLookAhead;
 	private Dictionary mDicContacts;
 	private final Dictionary mDicShortcuts;
 	private final Dictionary mDicNumber;
 	private static Suggestor mInstance = null;
 	private SuggestionsRequest mPendingRequest = null;
-	private final ThreadPool mThreadPool;
+	// Lets each keystroke resume the language search from the previous one
+	private final SearchSession mSearchSession = new SearchSession();
+	// Runs the latest suggestions request. Learning has its own, lower priority thread.
+	private final LatestRequestScheduler mScheduler;
+	private final Handler mLearningHandler;
+	// Runs the slow dictionaries (contacts, look-ahead) while the language dictionary is searched
+	private final ExecutorService mExecutor;
+	// How long the language search may take before the best suggestions so far are delivered
+	private volatile long mSearchBudget = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SEARCH_BUDGET_MS);
+	private final SuggestorMetrics mMetrics = new SuggestorMetrics(mSearchBudget);
 	private boolean mPredictNextWord;
 	private boolean mIncludeContacts;
 	private Language mLanguage;
@@ -50,13 +67,42 @@ public final class Suggestor {
 
 	private static final double MIN_SCORE_FOR_DEFAULT = 13f;
 
+	private static final int DEFAULT_SEARCH_BUDGET_MS = 8;
+	private static final int WORKER_COUNT = 2;
+	// How long after a request starts the language suggestions wait for each slow dictionary
+	private static final long CONTACTS_DEADLINE = TimeUnit.MILLISECONDS.toNanos(50);
+	private static final long LOOK_AHEAD_DEADLINE = TimeUnit.MILLISECONDS.toNanos(50);
+	private static final long NO_DEADLINE = Long.MAX_VALUE;
+
 
 	private Suggestor(final Context context) {
 		mDicContacts = new ContactsDictionary(context);
 		mDicShortcuts = new ShortcutDictionary(context);
 		mDicNumber = new NumberDictionary();
-		mThreadPool = new ThreadPool();
+		mScheduler = new LatestRequestScheduler("SuggestorThread");
+		final HandlerThread learningThread = new HandlerThread("SuggestorLearningThread", Process.THREAD_PRIORITY_BACKGROUND);
+		learningThread.start();
+		mLearningHandler = new Handler(learningThread.getLooper());
 		mContext = context;
+
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+				WORKER_COUNT,
+				WORKER_COUNT,
+				30,
+				TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					private int mThreadCount = 0;
+
+					@Override
+					public synchronized Thread newThread(final Runnable runnable) {
+						final Thread thread = new Thread(runnable, "SuggestorWorker-" + mThreadCount++);
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+		mExecutor = executor;
 	}
 
 
@@ -86,7 +132,7 @@ public final class Suggestor {
 
 
 	private synchronized void newPendingRequest(final SuggestionsRequest request) {
-		if(mPendingRequest != null) {
+		if(mPendingRequest != null && mPendingRequest != request) {
 			mPendingRequest.setExpired();
 		}
 
@@ -97,15 +143,36 @@ public final class Suggestor {
 	public void findSuggestionsAsync(final String composing, final SuggestionsListener listener) {
 		final SuggestionsRequest request = new SuggestionsRequest(composing, listener);
 
-		mThreadPool.run(new Runnable() {
+		// Stop the search that is running now instead of when this one starts
+		newPendingRequest(request);
+
+		mScheduler.run(new Runnable() {
 			public void run() {
 				try {
-					Suggestions suggestions = findSuggestions(request);
-					if(!suggestions.isExpired()) {
-						mHandler.sendMessageAtFrontOfQueue(Message.obtain(mHandler, 0, suggestions));
+					final long start = System.nanoTime();
+					request.setBudget(mSearchBudget);
+					FinalSuggestions suggestions = findSuggestions(request, mSearchSession);
+					if(suggestions == null) {
+						onRequestCancelled(request);
+						return;
+					}
+
+					mMetrics.onSuggestionsDelivered(System.nanoTime() - start, request.isTruncated());
+					mHandler.sendMessageAtFrontOfQueue(Message.obtain(mHandler, 0, suggestions));
+
+					if(request.isTruncated()) {
+						// Finish the search without a budget and deliver the complete suggestions,
+						// unless the user has typed on.
+						suggestions = collectSuggestions(new SuggestionsRequest(request), mSearchSession);
+						if(suggestions == null) {
+							onRequestCancelled(request);
+							return;
+						}
+
+						mMetrics.onSuggestionsRefined();
+						// Behind the truncated suggestions
+						mHandler.sendMessage(Message.obtain(mHandler, 0, suggestions));
 					}
-				} catch (SuggestionsExpiredException see) {
-					Log.v(KeyboardApp.LOG_TAG, "Suggestions(" + composing + ") expired");
 				} catch (Exception e) {
 					Log.e(KeyboardApp.LOG_TAG, "Suggestor thread exception: ", e);
 				}
@@ -114,6 +181,12 @@ public final class Suggestor {
 	}
 
 
+	private void onRequestCancelled(final SuggestionsRequest request) {
+		mMetrics.onRequestCancelled();
+		Log.v(KeyboardApp.LOG_TAG, "Suggestions(" + request.getComposing() + ") expired");
+	}
+
+
 	public interface SuggestionsListener {
 		void onSuggestionsReady(FinalSuggestions suggestions);
 	}
@@ -129,57 +202,87 @@ public final class Suggestor {
 	}
 
 
-	private class ThreadPool {
-		private final Set<Handler> mHandlers;
-		private int mThreadCount = 0;
+	/**
+	 * Runs requests one at a time on a single thread. Only the latest request waits to run: a
+	 * new one replaces the one that is waiting, which never runs. A request that is already
+	 * running has to stop itself, e.g. when it expires.
+	 */
+	private static class LatestRequestScheduler {
+		private final Handler mHandler;
+		private Runnable mWaiting = null;
+		private boolean mPosted = false;
 
 
-		ThreadPool() {
-			mHandlers = new HashSet<Handler>();
+		LatestRequestScheduler(final String name) {
+			final HandlerThread thread = new HandlerThread(name);
+			thread.start();
+			mHandler = new Handler(thread.getLooper());
 		}
 
 
-		public void run(final Runnable runnable) {
-			final Handler handler;
-
-			synchronized (mHandlers) {
-				final Iterator<Handler> iterator = mHandlers.iterator();
-				if (iterator.hasNext()) {
-					handler = iterator.next();
-					iterator.remove();
-				} else {
-					final HandlerThread thread = new HandlerThread("SuggestorThread-" + mThreadCount++);
-					thread.start();
-					handler = new Handler(thread.getLooper());
-				}
+		public synchronized void run(final Runnable request) {
+			mWaiting = request;
+			if(!mPosted) {
+				mPosted = true;
+				mHandler.post(mRunWaiting);
 			}
+		}
 
-			handler.post(new Runnable() {
-				@Override
-				public void run() {
-					runnable.run();
-					synchronized (mHandlers) {
-						mHandlers.add(handler);
+
+		private final Runnable mRunWaiting = new Runnable() {
+			@Override
+			public void run() {
+				while(true) {
+					final Runnable request;
+					synchronized(LatestRequestScheduler.this) {
+						request = mWaiting;
+						mWaiting = null;
+						if(request == null) {
+							mPosted = false;
+							return;
+						}
 					}
+
+					request.run();
 				}
-			});
-		}
+			}
+		};
 	}
 
 
+	/**
+	 * @return	The suggestions, or null if a newer request cancelled this one.
+	 */
 	public FinalSuggestions findSuggestions(final String composing) {
-		return findSuggestions(new SuggestionsRequest(composing));
+		return findSuggestions(new SuggestionsRequest(composing), null);
 	}
 
 
-	private FinalSuggestions findSuggestions(final SuggestionsRequest request) {
-		final FinalSuggestions finalSuggestions = new FinalSuggestions(request);
-
+	/**
+	 * @param request	The request
+	 * @param session	The search session of the composing word, or null to search from scratch.
+	 * @return			The suggestions, or null if the request expired.
+	 */
+	private FinalSuggestions findSuggestions(final SuggestionsRequest request, final SearchSession session) {
 		// Terminate previous thread
 		newPendingRequest(request);
 
-		// Get look-ahead suggestions
-		Suggestions lookAheadSuggestions = null;
+		return collectSuggestions(request, session);
+	}
+
+
+	/**
+	 * Gets suggestions from every dictionary and merges them.
+	 * @param request	The request
+	 * @param session	The search session of the composing word, or null to search from scratch.
+	 * @return			The suggestions, or null if the request expired.
+	 */
+	private FinalSuggestions collectSuggestions(final SuggestionsRequest request, final SearchSession session) {
+		final long start = System.nanoTime();
+		final FinalSuggestions finalSuggestions = new FinalSuggestions(request);
+
+		// Get look-ahead suggestions in the background
+		Future<Suggestions> lookAheadFuture = null;
 		if (mPredictNextWord) {
 			StringBuilder word1 = new StringBuilder();
 			StringBuilder word2 = new StringBuilder();
@@ -190,16 +293,36 @@ public final class Suggestor {
 					request,
 					word1.toString(),
 					word2.toString());
-			lookAheadSuggestions = mDicLookAhead.getSuggestions(lookAheadRequest);
+			final CacheDictionary<LookAheadDictionary.LookAheadSuggestion, LookAheadDictionary.LookAheadSuggestionsRequest> cacheLookAhead = mCacheLookAhead;
+			lookAheadFuture = mExecutor.submit(new Callable<Suggestions>() {
+				@Override
+				public Suggestions call() {
+					return cacheLookAhead.getSuggestions(lookAheadRequest);
+				}
+			});
 		}
 
 		if(request.getComposing().length() == 0) {
-			// There is no composing to match. Just return the look-ahead matches.
-			finalSuggestions.addAll(lookAheadSuggestions);
-			finalSuggestions.matchCase();
-			finalSuggestions.removeDuplicates();
-			finalSuggestions.setNoDefault();
-			return finalSuggestions;
+			// The last word was committed. Start a new search session for the next one.
+			if(session != null) {
+				session.clear();
+			}
+
+			// There is no composing to match. Just return the look-ahead matches, however long they take.
+			finalSuggestions.merge(await(lookAheadFuture, "look-ahead", NO_DEADLINE));
+			return finalSuggestions.isExpired() ? null : finalSuggestions;
+		}
+
+		// Get contact suggestions in the background
+		Future<Suggestions> contactsFuture = null;
+		if(mIncludeContacts) {
+			final Dictionary dicContacts = mDicContacts;
+			contactsFuture = mExecutor.submit(new Callable<Suggestions>() {
+				@Override
+				public Suggestions call() {
+					return dicContacts.getSuggestions(request);
+				}
+			});
 		}
 
 		// Get numeric suggestions
@@ -208,35 +331,58 @@ public final class Suggestor {
 		// Add shortcut suggestions
 		final Suggestions shortcutsSuggestions = mDicShortcuts.getSuggestions(request);
 
-		// Get contact suggestions
-		Suggestions contactsSuggestions = null;
-		if(mIncludeContacts) {
-			contactsSuggestions = mDicContacts.getSuggestions(request);
+		// Get suggestions from language dictionary
+		final Suggestions languageSuggestions = mCacheLanguage.getSuggestions(request, session);
+		if(request.isExpired()) {
+			// Don't wait for the others
+			return null;
 		}
 
-		// Get suggestions from language dictionary
-		final Suggestions languageSuggestions = mDicLanguage.getSuggestions(request);
+		// Collect the background suggestions that are ready by their deadlines
+		final Suggestions contactsSuggestions = await(contactsFuture, "contacts", start + CONTACTS_DEADLINE);
+		final Suggestions lookAheadSuggestions = await(lookAheadFuture, "look-ahead", start + LOOK_AHEAD_DEADLINE);
 
-		// Merge all suggestions into FinalSuggestions.
-		finalSuggestions.addAll(shortcutsSuggestions);
-		finalSuggestions.addAll(numberSuggestions);
-		finalSuggestions.addAll(contactsSuggestions);
-		finalSuggestions.addAll(lookAheadSuggestions);
-		finalSuggestions.addAll(languageSuggestions);
+		// Merge all suggestions into FinalSuggestions, match their case, remove duplicates,
+		// make sure composing is one of them and set the default.
+		finalSuggestions.merge(
+				shortcutsSuggestions,
+				numberSuggestions,
+				contactsSuggestions,
+				lookAheadSuggestions,
+				languageSuggestions);
 
-		// Match case of suggestions to composing.
-		finalSuggestions.matchCase();
+		return finalSuggestions.isExpired() ? null : finalSuggestions;
+	}
 
-		// Make sure composing is one of the suggestions.
-		finalSuggestions.addComposing();
 
-		// Remove duplicates
-		finalSuggestions.removeDuplicates();
+	/**
+	 * Waits for suggestions from a dictionary that is searched in the background.
+	 * @param future	The search, or null if there is none
+	 * @param name		The dictionary's name, for the log
+	 * @param deadline	When to stop waiting, in System.nanoTime(), or NO_DEADLINE
+	 * @return			The suggestions, or null if the search missed its deadline or failed.
+	 * 					A search that missed its deadline keeps going, so it can fill the cache.
+	 */
+	private Suggestions await(final Future<Suggestions> future, final String name, final long deadline) {
+		if(future == null) {
+			return null;
+		}
 
-		// Set default suggestion
-		finalSuggestions.assignDefault();
+		try {
+			if(deadline == NO_DEADLINE) {
+				return future.get();
+			}
 
-		return finalSuggestions;
+			return future.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+		} catch (TimeoutException te) {
+			Log.v(KeyboardApp.LOG_TAG, "Skipped " + name + " suggestions that missed their deadline");
+		} catch (ExecutionException ee) {
+			Log.e(KeyboardApp.LOG_TAG, "Failed to get " + name + " suggestions", ee.getCause());
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+
+		return null;
 	}
 
 
@@ -254,110 +400,130 @@ public final class Suggestor {
 		}
 
 
-		public void assignDefault() {
-			if(size() == 0) {
-				setNoDefault();
+		/**
+		 * @return	True if the language search ran out of time, so better suggestions may follow.
+		 */
+		public boolean isTruncated() {
+			return getRequest().isTruncated();
+		}
+
+
+		/**
+		 * Merges the suggestions from each dictionary into this list in one pass, in order.
+		 * The case of every suggestion is matched to the composing and only the first
+		 * suggestion of each word is kept. The first suggestion that matches the composing is
+		 * moved to the front, behind a ComposingSuggestion unless it is the composing itself.
+		 * The default is the first shortcut, language or look-ahead suggestion.
+		 * @param sources	The suggestions to merge. Any may be null.
+		 */
+		private void merge(final Suggestions<?>... sources) {
+			if(isExpired()) {
+				// Too late
 				return;
 			}
 
-			// Set the default to the shortcut or highest-ranking language or look-ahead suggestion
-			for (final Suggestion suggestion : this) {
-				if (suggestion instanceof ShortcutDictionary.ShortcutSuggestion
-						|| suggestion instanceof LanguageDictionary.LanguageSuggestion
-						|| suggestion instanceof LookAheadDictionary.LookAheadSuggestion) {
-					mDefaultIndex = indexOf(suggestion.getWord());
-					break;
+			int maxSize = 0;
+			for(final Suggestions<?> source : sources) {
+				if(source != null) {
+					maxSize += source.size();
 				}
 			}
 
-			if(mDefaultIndex == -1) {
-				// Composing is the default if there is no other.
-				mDefaultIndex = 0;
-			} else if(mDefaultIndex > 0
-					&& getComposing().length() == 1
-					&& !get(mDefaultIndex).matches(getComposing())) {
-				// Single letter composing suggestions should always be the default
-				// unless it's a real word.
-				mDefaultIndex = 0;
-			}
-		}
+			final String composing = getComposing();
+			final boolean hasComposing = composing.length() > 0;
+			// Slot 0 is saved for the composing and slot 1 for the top match
+			final Suggestion[] merged = new Suggestion[maxSize + 2];
+			final WordSet words = new WordSet(maxSize);
+			int size = 2;
+			Suggestion topMatch = null;
+			int iDefault = -1;
+			for(final Suggestions<?> source : sources) {
+				if(source == null) {
+					continue;
+				}
 
+				for(final Suggestion suggestion : source) {
+					suggestion.matchCase(composing);
+					final String word = suggestion.getWord();
+					if(!words.add(word)) {
+						// Duplicate
+						continue;
+					}
 
-		public void setNoDefault() {
-			mDefaultIndex = -1;
-		}
+					if(hasComposing) {
+						if(topMatch == null && suggestion.matches(composing)) {
+							topMatch = suggestion;
+							continue;
+						}
 
+						if(word.equals(composing)) {
+							// The top match isn't the composing, so a ComposingSuggestion replaces it
+							continue;
+						}
+					}
 
-		public void matchCase() {
-			final Iterator<Suggestion> iterator = iterator();
-			while(iterator.hasNext()) {
-				iterator.next().matchCase(getComposing());
+					if(iDefault == -1 && canBeDefault(suggestion)) {
+						iDefault = size;
+					}
+					merged[size++] = suggestion;
+				}
 			}
-		}
 
+			if(!hasComposing) {
+				set(merged, 2, size);
+				setNoDefault();
+				return;
+			}
 
-		public void addComposing() {
-			// Move the top match to the front.
-			final Suggestion topMatch = getTopMatch();
+			int start = 2;
 			if(topMatch != null) {
-				remove(topMatch);
-				add(0, topMatch);
+				merged[--start] = topMatch;
+				if(canBeDefault(topMatch)) {
+					iDefault = start;
+				}
 			}
 
-			// If the exact match isn't at the front, make it a
-			// ComposingSuggestion and move it to the front.
-			final int iExact = indexOf(getComposing());
-			if(iExact > 0) {
-				remove(get(iExact));
-				add(0, new ComposingSuggestion(getComposing()));
+			if(topMatch == null || !topMatch.getWord().equals(composing)) {
+				merged[--start] = new ComposingSuggestion(composing);
 			}
+			set(merged, start, size);
 
-			// Is the composing still missing?
-			if(get(getComposing()) == null) {
-				add(0, new ComposingSuggestion(getComposing()));
+			// Composing is the default if there is no other.
+			mDefaultIndex = iDefault == -1 ? 0 : iDefault - start;
+			if(mDefaultIndex > 0
+					&& composing.length() == 1
+					&& !get(mDefaultIndex).matches(composing)) {
+				// Single letter composing suggestions should always be the default
+				// unless it's a real word.
+				mDefaultIndex = 0;
 			}
 		}
 
 
-		private void removeDuplicates() {
-			final Iterator<Suggestion> iterator = iterator();
-			final ArrayList<String> words = new ArrayList<>();
-			int iSuggestion = -1;
-			while(iterator.hasNext()) {
-				iSuggestion++;
-				Suggestion suggestion = iterator.next();
-				if(!words.contains(suggestion.getWord())) {
-					words.add(suggestion.getWord());
-					continue;
-				} else {
-					iterator.remove();
-					if(iSuggestion < mDefaultIndex) {
-						mDefaultIndex = mDefaultIndex - 1;
-					} else if(iSuggestion == mDefaultIndex) {
-						// Deleting the default???
-						// Don't do it
-						continue;
-					}
-				}
-			}
+		private boolean canBeDefault(final Suggestion suggestion) {
+			return suggestion instanceof ShortcutDictionary.ShortcutSuggestion
+					|| suggestion instanceof LanguageDictionary.LanguageSuggestion
+					|| suggestion instanceof LookAheadDictionary.LookAheadSuggestion;
 		}
 
 
-		private Suggestion getTopMatch() {
-			for(final Suggestion suggestion : this) {
-				if(suggestion.matches(getComposing())) {
-					return suggestion;
-				}
-			}
+		public void setNoDefault() {
+			mDefaultIndex = -1;
+		}
 
-			return null;
+
+		public void matchCase() {
+			final Iterator<Suggestion> iterator = iterator();
+			while(iterator.hasNext()) {
+				iterator.next().matchCase(getComposing());
+			}
 		}
 	}
 
 
 	public void learnSuggestions(final String input) {
 
-		mThreadPool.run(new Runnable() {
+		mLearningHandler.post(new Runnable() {
 			@Override
 			public void run() {
 				// Check length
@@ -404,16 +570,33 @@ public final class Suggestor {
 	}
 
 
+	/**
+	 * Writes the counts learned so far to the journals, after any learning that's already queued.
+	 * Learned counts are buffered and otherwise written a few seconds later. See DeltaBuffer.
+	 */
+	public void flushLearning() {
+		mLearningHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				DeltaBuffer.flushAll();
+			}
+		});
+	}
+
+
 	public void loadPreferences() {
 		final SharedPreferences sharedPrefs = KeyboardApp.getApp().getSharedPreferences(Settings.SETTINGS_FILE, Context.MODE_PRIVATE);
 		mIncludeContacts = sharedPrefs.getBoolean("include_contacts", false);
 		mPredictNextWord = sharedPrefs.getBoolean("nextword", true);
+		setSearchBudget(sharedPrefs.getInt("search_budget", DEFAULT_SEARCH_BUDGET_MS));
 
 		if(mDicLanguage == null || !mLanguage.equals(sharedPrefs.getString("language", "en"))) {
 			mLanguage = Language.createLanguage(sharedPrefs.getString("language", "en"));
 			mCollator = new KeyCollator(mLanguage, KeyboardLayout.getCurrentLayout());
 			mDicLanguage = new LanguageDictionary(mContext, mCollator);
 			mDicLookAhead = new LookAheadDictionary(mContext, mCollator);
+			mCacheLanguage = new CacheDictionary<>(mDicLanguage);
+			mCacheLookAhead = new CacheDictionary<>(mDicLookAhead);
 		}
 	}
 
@@ -424,6 +607,32 @@ public final class Suggestor {
 		mCollator = new KeyCollator(mLanguage, KeyboardLayout.getCurrentLayout());
 		mDicLanguage = new LanguageDictionary(mContext, mCollator);
 		mDicLookAhead = new LookAheadDictionary(mContext, mCollator);
+		mCacheLanguage = new CacheDictionary<>(mDicLanguage);
+		mCacheLookAhead = new CacheDictionary<>(mDicLookAhead);
+	}
+
+
+	/**
+	 * Sets how long the language search may take. When it runs out, the best suggestions found
+	 * so far are delivered, followed by the complete ones when the search is done.
+	 * @param millis	The budget, in milliseconds
+	 */
+	public void setSearchBudget(final long millis) {
+		mSearchBudget = TimeUnit.MILLISECONDS.toNanos(millis);
+		mMetrics.setSearchBudget(mSearchBudget);
+	}
+
+
+	public SuggestorMetrics getMetrics() {
+		return mMetrics;
+	}
+
+
+	/**
+	 * @return	How much of the language dictionary has been loaded, and how long it took.
+	 */
+	public LoadProgress getLoadProgress() {
+		return mDicLanguage.getLoadProgress();
 	}
 
 
@@ -437,6 +646,16 @@ public final class Suggestor {
 	}
 
 
+	public CacheDictionary getLanguageCache() {
+		return mCacheLanguage;
+	}
+
+
+	public CacheDictionary getLookAheadCache() {
+		return mCacheLookAhead;
+	}
+
+
 	public boolean containsIgnoreCase(final String word) {
 		if(mDicLanguage.contains(word)) {
 			return true;
@@ -457,10 +676,4 @@ public final class Suggestor {
 			super(word);
 		}
 	}
-
-
-	public static class SuggestionsExpiredException extends RuntimeException {
-		@Serial
-		private static final long serialVersionUID = -241038711087099668L;
-	}
 }
\ No newline at end of file
@@ -0,0 +1,132 @@
+package com.comet.keyboard.dictionary;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts how long the Suggestor takes to deliver suggestions, how often its search runs out of
+ * time, and how many requests are cancelled by newer ones.
+ *
+ * @author Barry Fruitman
+ */
+public final class SuggestorMetrics {
+	private long mSearchBudget;
+	private int mRequestCount = 0;
+	private int mTruncatedCount = 0;
+	private int mRefinedCount = 0;
+	private int mCancelledCount = 0;
+	private long mTotalLatency = 0;
+	private long mMaxLatency = 0;
+
+
+	SuggestorMetrics(final long searchBudget) {
+		mSearchBudget = searchBudget;
+	}
+
+
+	/**
+	 * Records a request whose suggestions were delivered.
+	 * @param latency	The time from the request to its suggestions, in nanoseconds
+	 * @param truncated	True if the search ran out of time
+	 */
+	synchronized void onSuggestionsDelivered(final long latency, final boolean truncated) {
+		mRequestCount++;
+		mTotalLatency += latency;
+		mMaxLatency = Math.max(mMaxLatency, latency);
+		if(truncated) {
+			mTruncatedCount++;
+		}
+	}
+
+
+	/**
+	 * Records that the complete suggestions of a truncated request were delivered.
+	 */
+	synchronized void onSuggestionsRefined() {
+		mRefinedCount++;
+	}
+
+
+	/**
+	 * Records a request that expired before its suggestions were delivered.
+	 */
+	synchronized void onRequestCancelled() {
+		mCancelledCount++;
+	}
+
+
+	synchronized void setSearchBudget(final long searchBudget) {
+		mSearchBudget = searchBudget;
+	}
+
+
+	/**
+	 * @return	How long the language search may take, in milliseconds
+	 */
+	public synchronized long getSearchBudgetMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(mSearchBudget);
+	}
+
+
+	public synchronized int getRequestCount() {
+		return mRequestCount;
+	}
+
+
+	/**
+	 * @return	The number of requests whose search ran out of time
+	 */
+	public synchronized int getTruncatedCount() {
+		return mTruncatedCount;
+	}
+
+
+	/**
+	 * @return	The number of truncated requests whose complete suggestions were delivered later
+	 */
+	public synchronized int getRefinedCount() {
+		return mRefinedCount;
+	}
+
+
+	/**
+	 * @return	The number of requests that expired before their suggestions were delivered
+	 */
+	public synchronized int getCancelledCount() {
+		return mCancelledCount;
+	}
+
+
+	public synchronized double getAverageLatencyMillis() {
+		return mRequestCount == 0 ? 0 : mTotalLatency / 1e6 / mRequestCount;
+	}
+
+
+	public synchronized double getMaxLatencyMillis() {
+		return mMaxLatency / 1e6;
+	}
+
+
+	public synchronized void reset() {
+		mRequestCount = 0;
+		mTruncatedCount = 0;
+		mRefinedCount = 0;
+		mCancelledCount = 0;
+		mTotalLatency = 0;
+		mMaxLatency = 0;
+	}
+
+
+	@Override
+	public synchronized String toString() {
+		return String.format(Locale.US,
+				"SuggestorMetrics(budget=%dms, requests=%d, truncated=%d, refined=%d, cancelled=%d, avg=%.2fms, max=%.2fms)",
+				getSearchBudgetMillis(),
+				mRequestCount,
+				mTruncatedCount,
+				mRefinedCount,
+				mCancelledCount,
+				getAverageLatencyMillis(),
+				getMaxLatencyMillis());
+	}
+}
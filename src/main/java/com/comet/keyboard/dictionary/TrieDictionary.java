@@ -4,11 +4,12 @@ import android.content.Context;
 import android.util.Log;
 
 import com.comet.keyboard.KeyboardApp;
-import com.comet.keyboard.dictionary.Suggestor.SuggestionsExpiredException;
-import com.comet.keyboard.dictionary.radixtrie.Node;
+import com.comet.keyboard.dictionary.radixtrie.CompactTrie;
 import com.comet.keyboard.dictionary.radixtrie.RadixTrie;
+import com.comet.keyboard.dictionary.radixtrie.Trie;
 
-import java.util.Comparator;
+import java.io.File;
+import java.io.IOException;
 
 abstract class TrieDictionary<S extends Suggestion, R extends SuggestionsRequest>
 		 implements LearningDictionary<S, R> {
@@ -18,9 +19,21 @@ abstract class TrieDictionary<S extends Suggestion, R extends SuggestionsRequest
 	private final int MIN_COUNT = 2; // Count threshold for suggestions
 	final KeyCollator mCollator;
 	protected final Context mContext;
-	private final RadixTrie mTrie = new RadixTrie();
+	// Words are loaded into mTrie, then compiled into mBase when loading is done. After
+	// that mTrie is a small overlay that only holds words that are not in mBase.
+	// The tries have one writer at a time, which holds this dictionary's lock. Searches don't
+	// lock. They see each word either before or after a change, see RadixTrie.insert().
+	private volatile CompactTrie mBase = null;
+	private volatile RadixTrie mTrie = new RadixTrie();
 	private boolean mCancelled = false;
-	private int mCountSum;
+	private volatile int mCountSum;
+	// Incremented whenever the tries change, which invalidates search sessions
+	private volatile int mModCount = 0;
+	private volatile DictionaryListener mListener = null;
+	// False until loadDictionary() returns. Until then the listener isn't told about each
+	// word, e.g. each learned word that is replayed. It's told once that every word changed.
+	private boolean mLoaded = false;
+	private final LoadProgress mLoadProgress = new LoadProgress();
 
 
 	TrieDictionary(final Context context, final KeyCollator collator) {
@@ -32,7 +45,15 @@ abstract class TrieDictionary<S extends Suggestion, R extends SuggestionsRequest
 			@Override
 			public void run() {
 				try {
-					loadDictionary();
+					mLoadProgress.onLoadStarted();
+					try {
+						loadDictionary();
+					} finally {
+						// Even if loading failed, so the words learned from now on are published
+						publishComplete();
+					}
+					mLoadProgress.onLoadComplete();
+					Log.i(KeyboardApp.LOG_TAG, "Loaded " + mCollator.getLanguage() + " dictionary: " + mLoadProgress);
 				} catch (DictionaryCancelledException dce) {
 					Log.i(KeyboardApp.LOG_TAG, "Cancelled loading " + mCollator.getLanguage() + " dictionary");
 				}
@@ -42,8 +63,249 @@ abstract class TrieDictionary<S extends Suggestion, R extends SuggestionsRequest
 	}
 
 
-	void insert(final String word, final int count) {
+	synchronized void insert(final String word, final int count) {
+		final CompactTrie base = mBase;
+		if(base != null) {
+			final int node = base.findEntry(word);
+			if(node != Trie.NO_NODE) {
+				base.setCount(node, count);
+				onWordChanged(word);
+				return;
+			}
+		}
+
 		mTrie.insert(word, count);
+		onWordChanged(word);
+	}
+
+
+	/**
+	 * Publishes the words loaded so far: sets the count sum, invalidates search sessions
+	 * and cached suggestions, and records a load milestone.
+	 * @param milestone		The milestone reached, e.g. LoadProgress.FIRST_WORDS
+	 * @param loadedCount	The number of words loaded so far
+	 * @param totalCount	The number of words being loaded
+	 * @param countSum		The sum of the loaded counts
+	 */
+	final void publishLoaded(final int milestone, final int loadedCount, final int totalCount, final int countSum) {
+		synchronized(this) {
+			setCountSum(countSum);
+			onDictionaryChanged();
+		}
+
+		mLoadProgress.onMilestone(milestone, loadedCount, totalCount);
+	}
+
+
+	/**
+	 * Ends loading. Every word changed while loading is published at once, and from now on
+	 * the listener is told about each word that changes.
+	 */
+	private synchronized void publishComplete() {
+		mLoaded = true;
+		onDictionaryChanged();
+	}
+
+
+	/**
+	 * @return	How much of this dictionary has been loaded, and how long it took.
+	 */
+	public final LoadProgress getLoadProgress() {
+		return mLoadProgress;
+	}
+
+
+	/**
+	 * Invalidates search sessions and tells the listener that a word changed, unless this
+	 * dictionary is still loading. Must be called after every change to this dictionary's
+	 * words, with its lock held.
+	 */
+	final void onWordChanged(final String word) {
+		mModCount++;
+
+		final DictionaryListener listener = mListener;
+		if(listener != null && mLoaded) {
+			listener.onWordChanged(word);
+		}
+	}
+
+
+	/**
+	 * Invalidates search sessions and tells the listener that every word may have changed.
+	 * Must be called with this dictionary's lock held.
+	 */
+	private void onDictionaryChanged() {
+		mModCount++;
+
+		final DictionaryListener listener = mListener;
+		if(listener != null) {
+			listener.onDictionaryChanged();
+		}
+	}
+
+
+	/**
+	 * Compiles the loaded words into a compact, read-only base trie and starts a new,
+	 * empty overlay for words learned from now on.
+	 */
+	final synchronized void compact() {
+		setBase(CompactTrie.compile(mTrie));
+	}
+
+
+	/**
+	 * Replaces the base trie and starts a new, empty overlay.
+	 * @param base	The new base trie
+	 */
+	final synchronized void setBase(final CompactTrie base) {
+		// Publish the base before replacing the overlay, so a concurrent search sees
+		// every word at least once.
+		mBase = base;
+		mTrie = new RadixTrie();
+		onDictionaryChanged();
+
+		Log.i(KeyboardApp.LOG_TAG, "Loaded " + mCollator.getLanguage() + " dictionary into " + base);
+	}
+
+
+	/**
+	 * Called when loading from an image, before its section is used as the base trie.
+	 * Subclasses can take other sections from the image here.
+	 * @return	False if the image can't be used.
+	 */
+	boolean onImageOpened(final DictionaryImage image) {
+		return true;
+	}
+
+
+	/**
+	 * @return	True if no words were added since the base trie was set.
+	 */
+	final boolean isOverlayEmpty() {
+		final RadixTrie trie = mTrie;
+		return trie.getChildCount(trie.getRoot()) == 0;
+	}
+
+
+	/**
+	 * Maps a section of the pre-built dictionary image (see {@link DictionaryImage}) and
+	 * uses it as the base trie.
+	 * @param section	The image section, e.g. DictionaryImage.SECTION_LEXICON
+	 * @return			True if the section was loaded. False if there is no usable image, in
+	 * 					which case the dictionary must be loaded from the dictionary DB.
+	 */
+	final boolean loadDictionaryFromImage(final int section) {
+		return loadDictionaryFromImage(
+				mContext.getDatabasePath(mCollator.getLanguageCode() + DictionaryImage.FILE_EXT), section);
+	}
+
+
+	/**
+	 * Maps a section of an image and uses it as the base trie.
+	 * @param file		The image file, e.g. from getCacheImageFile()
+	 * @param section	The image section, e.g. DictionaryImage.SECTION_LEXICON
+	 * @return			False if the file doesn't exist or can't be used.
+	 */
+	final boolean loadDictionaryFromImage(final File file, final int section) {
+		try {
+			final DictionaryImage image = DictionaryImage.open(file);
+			if(image == null) {
+				return false;
+			}
+
+			final CompactTrie trie = image.getTrie(section);
+			if(trie == null || !onImageOpened(image)) {
+				return false;
+			}
+
+			setBase(trie);
+			setCountSum(image.getCountSum(section));
+		} catch (IOException e) {
+			Log.e(KeyboardApp.LOG_TAG, "Failed to load " + file, e);
+			return false;
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * The image this dictionary caches after it's loaded from the dictionary DB, so the next
+	 * load can map it instead. Its name has the size and time of the DB file, so a new DB
+	 * makes it stale. Call this before loading the DB, so a DB that changes during the load
+	 * isn't cached under the new name.
+	 * @param section	The image section, e.g. DictionaryImage.SECTION_LEXICON
+	 */
+	final File getCacheImageFile(final int section) {
+		final File db = DictionaryDB.getDatabaseFile(mContext, mCollator.getLanguageCode());
+
+		return new File(mContext.getCacheDir(), getCacheImagePrefix(section)
+				+ Long.toHexString(db.length()) + "-" + Long.toHexString(db.lastModified()) + DictionaryImage.FILE_EXT);
+	}
+
+
+	private String getCacheImagePrefix(final int section) {
+		return mCollator.getLanguageCode() + "-" + section + "-";
+	}
+
+
+	/**
+	 * Writes the base trie to the cache image, and deletes the stale images of the section.
+	 * Must be called before the learned words are merged in, since they're replayed on every load.
+	 * @param file		From getCacheImageFile()
+	 * @param section	The image section, e.g. DictionaryImage.SECTION_LEXICON
+	 * @param ngrams	The n-grams to write with the base trie, or null for none
+	 */
+	final void writeCacheImage(final File file, final int section, final NGramModel ngrams) {
+		final int countSum = getCountSum();
+		if(countSum == 0) {
+			// Nothing was loaded, e.g. the DB couldn't be read
+			return;
+		}
+
+		try {
+			DictionaryImage.write(file,
+					new int[] {section},
+					new int[] {countSum},
+					new CompactTrie[] {mBase},
+					ngrams, countSum);
+		} catch (IOException e) {
+			Log.e(KeyboardApp.LOG_TAG, "Failed to write " + file, e);
+			return;
+		}
+
+		final File[] files = file.getParentFile().listFiles();
+		if(files != null) {
+			for(File stale : files) {
+				if(stale.getName().startsWith(getCacheImagePrefix(section))
+						&& !stale.equals(file) && !stale.equals(DictionaryImage.getVerifiedFile(file))) {
+					stale.delete();
+				}
+			}
+		}
+
+		Log.i(KeyboardApp.LOG_TAG, "Cached " + mCollator.getLanguage() + " dictionary in " + file);
+	}
+
+
+	/**
+	 * Listens for changes to the words in a dictionary.
+	 */
+	interface DictionaryListener {
+		/**
+		 * Called when a word is added, removed or its count changes.
+		 */
+		void onWordChanged(String word);
+
+		/**
+		 * Called when every word may have changed, e.g. when loading is done.
+		 */
+		void onDictionaryChanged();
+	}
+
+
+	final void setDictionaryListener(final DictionaryListener listener) {
+		mListener = listener;
 	}
 
 
@@ -66,249 +328,251 @@ abstract class TrieDictionary<S extends Suggestion, R extends SuggestionsRequest
 
 	@Override
 	public boolean contains(final String word) {
-		final Node node = mTrie.findNode(word, mExactCharComparator);
-
-		return node != null
-				&& node.isEntry()
-				&& node.getWord().length() == word.length();
+		return getCount(word) > 0;
 	}
 
 
 	int getCount(final String word) {
-		Node node = mTrie.findNode(word, mExactCharComparator);
-		if(node == null || !node.isEntry() || node.getWord().length() != word.length()) {
-			return 0;
+		final CompactTrie base = mBase;
+		if(base != null) {
+			final int node = base.findEntry(word);
+			if(node != Trie.NO_NODE) {
+				return base.getCount(node);
+			}
 		}
 
-		return node.getCount();
+		final RadixTrie trie = mTrie;
+		final int node = trie.findEntry(word);
+
+		return node != Trie.NO_NODE ? trie.getCount(node) : 0;
 	}
 
 
 	@Override
 	public Suggestions<S> getSuggestions(final R request) {
-		final Suggestions<S> suggestions
-				= new SortedSuggestions<>(request, getComparator());
-		findSuggestionsInTrie(
-				"",
-				new StringBuilder(suggestions.getComposing()),
-				suggestions,
-				0,
-				mTrie.getRoot(),
-				1,
-				getCountSum(),
-				0,
-				EditDistance.getMaxEditDistance(suggestions.getComposing()));
+		return getSuggestions(request, null);
+	}
+
+
+	/**
+	 * Gets suggestions, resuming from the previous search in session if the composing
+	 * extends it. If the request's deadline passes, the best suggestions found so far are
+	 * returned and the request is marked truncated. If the request expires, the search stops
+	 * and the suggestions should be discarded.
+	 * @param request	The request
+	 * @param session	The search session of the composing word, or null.
+	 */
+	Suggestions<S> getSuggestions(final R request, final SearchSession session) {
+		final Suggestions<S> suggestions = createSuggestions(request);
+		final double maxEditDistance = EditDistance.getMaxEditDistance(suggestions.getComposing());
+		final int status;
+		if(session == null) {
+			status = findSuggestions(suggestions, maxEditDistance, request.getDeadline());
+		} else {
+			synchronized(session) {
+				status = findSuggestions(suggestions, maxEditDistance, request.getDeadline(), session);
+			}
+		}
+
+		if(status == TrieSearch.TRUNCATED) {
+			request.setTruncated();
+		}
 
 		return suggestions;
 	}
 
 
-	Suggestions<S> getMatches(final String word) {
-		final Suggestions<S> suggestions =
-				new SortedSuggestions<>(new SuggestionsRequest(word), getComparator());
-
-		findSuggestionsInTrie(
-				"",
-				new StringBuilder(suggestions.getComposing()),
-				suggestions,
-				0,
-				mTrie.getRoot(),
-				1,
-				getCountSum(),
-				0,
-				0);
+	/**
+	 * Checks if a change to a word can change the suggestions for a request, i.e. if the
+	 * search for the request can find the word.
+	 * @param request	The request
+	 * @param word		The word that changed
+	 */
+	boolean canSuggest(final R request, final String word) {
+		final String composing = request.getComposing();
 
-		return suggestions;
+		return canMatch(composing, word, EditDistance.getMaxEditDistance(composing));
 	}
 
 
-	Suggestions<S> getSuggestionsAfterPrefix(
-			final Suggestions<S> suggestions,
-			String prefix,
-			final int countSum) {
-		final Node node = mTrie.findNode(prefix, mExactCharComparator);
-		if(node != null) {
-//			final int iNodeValue = node.getWord().length() - prefix.length();
-			final String composing = suggestions.getComposing();
-			findSuggestionsInTrie(
-					prefix,
-					new StringBuilder(composing),
-					suggestions,
-					0,
-					node,
-					1,
-					countSum,
-					0,
-					composing.length() == 0 ? 8 : EditDistance.getMaxEditDistance(composing));
+	/**
+	 * Checks if a search for composing can find word, by searching a trie that only has word.
+	 */
+	final boolean canMatch(final String composing, final String word, final double maxEditDistance) {
+		if(word.length() == 0 || getMinEditDistance(composing, word) > maxEditDistance) {
+			return false;
 		}
 
-		return suggestions;
+		final RadixTrie trie = new RadixTrie();
+		trie.insert(word, 1);
+		final Suggestions<S> suggestions = createSuggestions(new SuggestionsRequest(composing));
+		final TrieSearch<S> search = new TrieSearch<>(this, suggestions, 0, getCountSum(), maxEditDistance, null, SuggestionsRequest.NO_DEADLINE);
+		search.search(trie, trie.getRoot(), 1);
+		search.finish();
+
+		return suggestions.size() > 0;
 	}
 
 
-	private void findSuggestionsInTrie(
-			final String prefix,
-			final StringBuilder composing,
-			final Suggestions<S> suggestions,
-			final int iComposing,
-			final Node node,
-			final int iNodeValue,
-			final int countSum,
-			final double editDistance,
-			final double maxEditDistance) {
-
-		if(editDistance > maxEditDistance) {
-			return;
+	/**
+	 * A cheap lower bound of the edit distance a search for composing finds word at, so
+	 * canMatch() doesn't have to search for most words. Letters the word has more or fewer
+	 * than the keystrokes each cost an edit, and so does each keystroke that no letter of the
+	 * word matches exactly, starting with the first one.
+	 */
+	private int getMinEditDistance(final String composing, final String word) {
+		// Other chars are skipped for free, see TrieSearch
+		int letterCount = 0;
+		for(int iChar = 0; iChar < word.length(); iChar++) {
+			final char c = word.charAt(iChar);
+			if(Character.isLetter(c) || Character.isSpaceChar(c)) {
+				letterCount++;
+			}
 		}
 
-		if(suggestions.isExpired()) {
-			throw new SuggestionsExpiredException();
+		final int lengthDistance = Math.abs(letterCount - composing.length());
+		if(composing.length() == 0) {
+			return lengthDistance;
 		}
 
-		final char[] value = node.getValue();
+		// The first keystroke must match the first letter, or be an edit
+		int firstLetter = 0;
+		while(firstLetter < word.length() - 1
+				&& !Character.isLetter(word.charAt(firstLetter)) && !Character.isSpaceChar(word.charAt(firstLetter))) {
+			firstLetter++;
+		}
+		final int firstDistance = mCollator.compareCharToKey(word.charAt(firstLetter), composing.charAt(0)) == 0 ? 0 : 1;
+
+		int unmatchedCount = 0;
+		for(int iComposing = 0; iComposing < composing.length(); iComposing++) {
+			final char keyStroke = composing.charAt(iComposing);
+			int iWord = 0;
+			while(iWord < word.length() && mCollator.compareCharToKey(word.charAt(iWord), keyStroke) != 0) {
+				iWord++;
+			}
+			if(iWord == word.length()) {
+				unmatchedCount++;
+			}
+		}
 
-		if(iComposing >= composing.length()) {
-			// End of composing. Look for suggestions below this node and add them.
-			final double trailingEditDistance = node.getWord().length() - prefix.length() - composing.length();
-			composing.append(Node.copyOfRange(value, iNodeValue, value.length));
-			addSuggestions(
-					node,
-					composing,
-					suggestions,
-					countSum,
-					editDistance + trailingEditDistance,
-					maxEditDistance);
-			composing.setLength(composing.length() - (value.length - iNodeValue));
+		return Math.max(Math.max(lengthDistance, firstDistance), unmatchedCount);
+	}
 
-			return;
-		}
 
-		if(iNodeValue >= value.length) {
-			// End of this node's key. Traverse children.
-			for(Node child : node.getChildren()) {
-				findSuggestionsInTrie(
-						prefix,
-						composing,
-						suggestions,
-						iComposing,
-						child,
-						0,
-						countSum,
-						editDistance,
-						maxEditDistance);
-			}
+	Suggestions<S> getMatches(final String word) {
+		final Suggestions<S> suggestions = createSuggestions(new SuggestionsRequest(word));
 
-			return;
-		}
+		findSuggestions(suggestions, 0, SuggestionsRequest.NO_DEADLINE);
 
+		return suggestions;
+	}
 
-		// Skip non-letter characters
-		if(!Character.isLetter(value[iNodeValue])
-				&& !Character.isSpaceChar(value[iNodeValue])) {
-			composing.insert(iComposing, value[iNodeValue]);
-			findSuggestionsInTrie(
-					prefix,
-					composing,
-					suggestions,
-					iComposing + 1,
-					node,
-					iNodeValue + 1,
-					countSum,
-					editDistance,
-					maxEditDistance);
-			composing.deleteCharAt(iComposing);
 
-			return;
+	/**
+	 * Searches the base trie and the overlay for suggestions.
+	 * @return	The status of the search. See TrieSearch.getStatus().
+	 */
+	private int findSuggestions(
+			final Suggestions<S> suggestions,
+			final double maxEditDistance,
+			final long deadline) {
+		final TrieSearch<S> search = new TrieSearch<>(this, suggestions, 0, getCountSum(), maxEditDistance, null, deadline);
+
+		// Read mBase before mTrie. See setBase().
+		final CompactTrie base = mBase;
+		final RadixTrie trie = mTrie;
+		if(base != null) {
+			search.search(base, base.getRoot(), 1);
 		}
 
-		final char keyStroke = composing.charAt(iComposing);
+		search.search(trie, trie.getRoot(), 1);
+		search.finish();
 
-		// Compare the keystroke to the next character in the trie traversal
-		int iKeyDistance = mCollator.compareCharToKey(value[iNodeValue], keyStroke);
-		if(iKeyDistance >= 0 && iKeyDistance + editDistance <= maxEditDistance) {
-			// Matched key. Follow this node, then return.
-			composing.setCharAt(iComposing, value[iNodeValue]);
-			findSuggestionsInTrie(
-					prefix,
-					composing,
-					suggestions,
-					iComposing + 1,
-					node,
-					iNodeValue + 1,
-					countSum,
-					iKeyDistance == 0 ? editDistance : editDistance + EditDistance.SUBSTITUTE,
-					maxEditDistance);
-			composing.setCharAt(iComposing, keyStroke);
-		}
+		return search.getStatus();
+	}
+
+
+	/**
+	 * Searches the base trie and the overlay for suggestions. If the session has the frontier
+	 * of the composing minus its last char, the search resumes from there. Otherwise it starts
+	 * from the roots. Either way the frontier of this search is added to the session, unless
+	 * the next keystroke will change the max edit distance or the search stopped early.
+	 * @return	The status of the search. See TrieSearch.getStatus().
+	 */
+	private int findSuggestions(
+			final Suggestions<S> suggestions,
+			final double maxEditDistance,
+			final long deadline,
+			final SearchSession session) {
+		final String composing = suggestions.getComposing();
+		final int modCount = mModCount;
+		final SearchSession.Frontier previous = session.getFrontier(composing, this, modCount, maxEditDistance);
+		final SearchSession.Frontier next =
+				EditDistance.getMaxEditDistance(composing.length() + 1) == maxEditDistance
+						? new SearchSession.Frontier(composing, this, modCount, maxEditDistance)
+						: null;
+		final TrieSearch<S> search = new TrieSearch<>(this, suggestions, 0, getCountSum(), maxEditDistance, next, deadline);
+
+		if(previous == null) {
+			// Read mBase before mTrie. See setBase().
+			final CompactTrie base = mBase;
+			final RadixTrie trie = mTrie;
+			if(base != null) {
+				search.search(base, base.getRoot(), 1);
+			}
 
-		// Assume this composing is missing a keystroke. Insert missing char and follow node.
-		composing.insert(iComposing, value[iNodeValue]);
-		findSuggestionsInTrie(
-				prefix,
-				composing,
-				suggestions,
-				iComposing + 1,
-				node,
-				iNodeValue + 1,
-				countSum,
-				editDistance + EditDistance.DELETE,
-				maxEditDistance);
-		composing.deleteCharAt(iComposing);
-
-		// Is this key adjacent the next keystroke?
-		if(iComposing < composing.length() - 1) {
-			iKeyDistance = mCollator.compareCharToKey(composing.charAt(iComposing +1), keyStroke);
-			if(iKeyDistance >= 0) {
-				// Assume it is a double-tap. Delete it and follow node.
-				final char deleted = composing.charAt(iComposing);
-				composing.deleteCharAt(iComposing);
-
-				findSuggestionsInTrie(
-						prefix,
-						composing,
-						suggestions,
-						iComposing,
-						node,
-						iNodeValue,
-						countSum,
-						editDistance + EditDistance.INSERT,
-						maxEditDistance);
-
-				composing.insert(iComposing, deleted);
+			search.search(trie, trie.getRoot(), 1);
+		} else {
+			// Resume from each state with the last two keystrokes left to match
+			for(int iState = 0; iState < previous.size(); iState++) {
+				search.resume(previous, iState);
 			}
 		}
+		search.finish();
+
+		// The session only gets complete frontiers
+		if(next != null && search.getStatus() == TrieSearch.COMPLETE) {
+			session.addFrontier(next);
+		}
+
+		return search.getStatus();
 	}
 
 
-	private void addSuggestions(
-			final Node node,
-			final StringBuilder prefix,
+	Suggestions<S> getSuggestionsAfterPrefix(
 			final Suggestions<S> suggestions,
-			final int countSum,
-			final double editDistance,
-			final double maxEditDistance) {
-
-		if(editDistance > maxEditDistance) {
-			return;
+			String prefix,
+			final int countSum) {
+		final CompactTrie base = mBase;
+		final RadixTrie trie = mTrie;
+		if(base != null) {
+			getSuggestionsAfterPrefix(base, suggestions, prefix, countSum);
 		}
+		getSuggestionsAfterPrefix(trie, suggestions, prefix, countSum);
 
-		// Add this node if it's an entry
-		if(node.isEntry()) {
-			addSuggestion(suggestions, prefix.toString(), node.getCount(), countSum, editDistance);
-		}
+		return suggestions;
+	}
 
 
-		// Recursively traverse all children
-		for(Node child : node.getChildren()) {
-			prefix.append(child.getValue());
-			addSuggestions(
-					child,
-					prefix,
+	private void getSuggestionsAfterPrefix(
+			final Trie trie,
+			final Suggestions<S> suggestions,
+			final String prefix,
+			final int countSum) {
+		final int node = trie.findNode(prefix, mExactCharComparator);
+		if(node != Trie.NO_NODE) {
+//			final int iNodeValue = node.getWord().length() - prefix.length();
+			final String composing = suggestions.getComposing();
+			final TrieSearch<S> search = new TrieSearch<>(
+					this,
 					suggestions,
+					prefix.length(),
 					countSum,
-					editDistance + child.getValue().length,
-					maxEditDistance);
-			prefix.setLength(prefix.length() - child.getValue().length);
+					composing.length() == 0 ? 8 : EditDistance.getMaxEditDistance(composing),
+					null,
+					SuggestionsRequest.NO_DEADLINE);
+			search.search(trie, node, 1);
+			search.finish();
 		}
 	}
 
@@ -321,7 +585,36 @@ abstract class TrieDictionary<S extends Suggestion, R extends SuggestionsRequest
 			double editDistance);
 
 
-	abstract protected Comparator<S> getComparator();
+	/**
+	 * @return	An empty list of suggestions for request, sorted by getScore().
+	 */
+	final Suggestions<S> createSuggestions(final SuggestionsRequest request) {
+		return new SortedSuggestions<>(request, mScorer);
+	}
+
+
+	/**
+	 * @return	The score that suggestions are ranked by, i.e.
+	 * 			|log(count / countSum)| + editDistance. Lower is better.
+	 */
+	abstract double getScore(S suggestion);
+
+
+	private final SortedSuggestions.Scorer<S> mScorer = new SortedSuggestions.Scorer<S>() {
+		@Override
+		public double getScore(final S suggestion) {
+			return TrieDictionary.this.getScore(suggestion);
+		}
+	};
+
+
+	/**
+	 * @return	The score of a suggestion with count at editDistance, without creating
+	 * 			it. Must agree with getScore(S).
+	 */
+	double getScore(final int count, final int countSum, final double editDistance) {
+		return Math.abs(Math.log((double) count / (double) countSum)) + editDistance;
+	}
 
 
 	/**
@@ -329,19 +622,9 @@ abstract class TrieDictionary<S extends Suggestion, R extends SuggestionsRequest
 	 * @param word		The word to learn
 	 * @param countIncrement		The default count for new words
 	 */
-	int learn(String word, int countIncrement) {
-		final int count;
-		final Node node = mTrie.findNode(word, mExactCharComparator);
-		if(node != null
-				&& node.isEntry() && node.getWord().equals(word)) {
-			// Update trie entry
-			count = node.getCount() + countIncrement;
-			node.setCount(count);
-		} else {
-			// Insert into trie
-			count = countIncrement;
-			insert(word, count);
-		}
+	synchronized int learn(String word, int countIncrement) {
+		final int count = getCount(word) + countIncrement;
+		insert(word, count);
 
 		mCountSum += countIncrement;
 
@@ -372,14 +655,13 @@ abstract class TrieDictionary<S extends Suggestion, R extends SuggestionsRequest
 
 
 	@Override
-	public boolean forget(String word) {
-		Node node = mTrie.findNode(word, mExactCharComparator);
-
-		if(node == null || node.getCount() == 0 || node.getCount() > MAX_DELETABLE_COUNT) {
+	public synchronized boolean forget(String word) {
+		final int count = getCount(word);
+		if(count == 0 || count > MAX_DELETABLE_COUNT) {
 			return false;
 		}
 
-		node.removeEntry();
+		insert(word, 0);
 		deleteFromDB(word);
 
 		return !contains(word);
@@ -0,0 +1,600 @@
+package com.comet.keyboard.dictionary;
+
+import com.comet.keyboard.dictionary.radixtrie.Trie;
+
+import java.util.Arrays;
+
+/**
+ * The fuzzy search of a trie for the words that are close to the keystrokes of a composing.
+ *
+ * <p>The search is a depth-first traversal of (node, keystroke) states. Each state is a frame on
+ * an explicit stack of primitive arrays, so the depth of the traversal is not limited by the
+ * thread's stack. The keystrokes that are left are always a suffix of the composing, so a state
+ * only needs the index of the next one. Edit distances are counted in integer units.
+ *
+ * <p>The entries found are kept as trie nodes in a small top list. Their words and suggestions
+ * are only created by {@link #finish()}, for the entries that made the cut. Nothing is
+ * allocated per node.
+ *
+ * <p>A search may have a deadline. When it passes, the search stops and {@link #finish()} adds
+ * the best entries found so far. When the request expires, the search stops and adds nothing.
+ * Either way it unwinds by emptying its stack, and {@link #getStatus()} tells why it stopped.
+ *
+ * <p>A search can be reused for many tries and start states but not by more than one thread.
+ *
+ * @author Barry Fruitman
+ */
+final class TrieSearch<S extends Suggestion> {
+	private static final int SUBSTITUTE = (int) EditDistance.SUBSTITUTE;
+	private static final int DELETE = (int) EditDistance.DELETE;
+	private static final int INSERT = (int) EditDistance.INSERT;
+
+	// Frame phases. A frame is a state of the search, or a node below the end of the composing.
+	private static final byte ENTER = 0;			// Check the state and branch
+	private static final byte CHILDREN = 1;		// Follow the next child
+	private static final byte ADD_ENTER = 2;		// Add this node if it's an entry
+	private static final byte ADD_CHILDREN = 3;	// Add the next child
+
+	// How many states to enter between checks of the request and the clock
+	private static final int CHECK_INTERVAL = 256;
+
+	// Search statuses
+	static final int COMPLETE = 0;		// Every search was done
+	static final int TRUNCATED = 1;	// The deadline passed
+	static final int CANCELLED = 2;	// The request expired
+
+	private final TrieDictionary<S, ?> mDictionary;
+	private final KeyCollator mCollator;
+	private final Suggestions<S> mSuggestions;
+	private final String mComposing;
+	private final int mPrefixLength;
+	private final int mCountSum;
+	private final int mMaxEditDistance;
+	private final SearchSession.Frontier mFrontier;
+	private final long mDeadline;
+	private int mStatesUntilCheck = CHECK_INTERVAL;
+	private int mStatus = COMPLETE;
+
+	private final Candidates mCandidates = new Candidates(Suggestions.MAX_SUGGESTIONS);
+
+	private Trie mTrie;
+	// The depth in mTrie where the words of this search start
+	private int mWordStart;
+	// The score of the worst suggestion, or infinity if there is still room
+	private double mSuggestionsWorstScore;
+	// The score an entry must beat, i.e. the lower of the worst suggestion and the worst candidate
+	private double mWorstScore;
+
+	private int mTop = -1;
+	private byte[] mPhases = new byte[64];
+	private int[] mNodes = new int[64];
+	private int[] mValueIndexes = new int[64];
+	private int[] mPathLengths = new int[64];
+	private int[] mKeyIndexes = new int[64];
+	private int[] mCosts = new int[64];
+	private int[] mChildIndexes = new int[64];
+
+
+	/**
+	 * @param dictionary		The dictionary the suggestions are for
+	 * @param suggestions		The suggestions to add to. Its composing is the keystrokes.
+	 * @param prefixLength		The length of the prefix the search starts after, if any
+	 * @param countSum			The count sum the scores are based on
+	 * @param maxEditDistance	The max edit distance
+	 * @param frontier			Where to add the states that are one keystroke from the end, or null
+	 * @param deadline			When to stop searching, in System.nanoTime(), or
+	 * 							SuggestionsRequest.NO_DEADLINE
+	 */
+	TrieSearch(
+			final TrieDictionary<S, ?> dictionary,
+			final Suggestions<S> suggestions,
+			final int prefixLength,
+			final int countSum,
+			final double maxEditDistance,
+			final SearchSession.Frontier frontier,
+			final long deadline) {
+		mDictionary = dictionary;
+		mCollator = dictionary.mCollator;
+		mSuggestions = suggestions;
+		mComposing = suggestions.getComposing();
+		mPrefixLength = prefixLength;
+		mCountSum = countSum;
+		mMaxEditDistance = (int) maxEditDistance;
+		mFrontier = frontier;
+		mDeadline = deadline;
+	}
+
+
+	/**
+	 * Searches a trie from the start of the composing.
+	 * @param trie			The trie to search
+	 * @param node			The node to start at
+	 * @param iNodeValue	The position in the node's value to start at
+	 */
+	void search(final Trie trie, final int node, final int iNodeValue) {
+		mTrie = trie;
+		mWordStart = trie.getDepth(node) - trie.getValueLength(node)
+				+ Math.min(iNodeValue, trie.getValueLength(node));
+		if(mComposing.length() == 1) {
+			addToFrontier(node, iNodeValue, 0, 0, 0);
+		}
+		search(node, iNodeValue, 0, 0, 0);
+	}
+
+
+	/**
+	 * Resumes a search from a state in the frontier of the composing minus its last char.
+	 */
+	void resume(final SearchSession.Frontier frontier, final int iState) {
+		mTrie = frontier.getTrie(iState);
+		mWordStart = frontier.getWordStart(iState);
+		search(
+				frontier.getNode(iState),
+				frontier.getValueIndex(iState),
+				frontier.getPathLength(iState),
+				mComposing.length() - 2,
+				frontier.getCost(iState));
+	}
+
+
+	/**
+	 * @return	COMPLETE, or why the search stopped early: TRUNCATED or CANCELLED.
+	 */
+	int getStatus() {
+		return mStatus;
+	}
+
+
+	/**
+	 * Adds the words of the best entries found by every search to the suggestions. Must be
+	 * called after the last search. Adds nothing if the request expired.
+	 */
+	void finish() {
+		if(mStatus == CANCELLED) {
+			mCandidates.clear();
+			return;
+		}
+
+		for(int iCandidate = 0; iCandidate < mCandidates.size(); iCandidate++) {
+			mDictionary.addSuggestion(
+					mSuggestions,
+					mCandidates.getWord(iCandidate),
+					mCandidates.getCount(iCandidate),
+					mCountSum,
+					mCandidates.getCost(iCandidate));
+		}
+		mCandidates.clear();
+	}
+
+
+	private void search(
+			final int startNode,
+			final int startNodeValue,
+			final int startPathLength,
+			final int startKeyIndex,
+			final int startCost) {
+		if(mStatus != COMPLETE) {
+			// Out of time, or no longer wanted
+			return;
+		}
+
+		// The previous search may have been interrupted by an exception
+		mTop = -1;
+		final S worst = mSuggestions.getWorst();
+		mSuggestionsWorstScore = worst == null ? Double.POSITIVE_INFINITY : mDictionary.getScore(worst);
+		updateWorstScore();
+		push(ENTER, startNode, startNodeValue, startPathLength, startKeyIndex, startCost);
+
+		// Each phase is a small method so the JIT can inline the trie accessors into it
+		while(mTop >= 0) {
+			switch(mPhases[mTop]) {
+				case ENTER:
+					enter();
+					break;
+				case CHILDREN:
+					nextChild();
+					break;
+				case ADD_ENTER:
+					addEntry();
+					break;
+				case ADD_CHILDREN:
+					addNextChild();
+					break;
+				default:
+					mTop--;
+					break;
+			}
+		}
+	}
+
+
+	private void enter() {
+		final Trie trie = mTrie;
+		final int top = mTop;
+		final int node = mNodes[top];
+		final int iNodeValue = mValueIndexes[top];
+		final int pathLength = mPathLengths[top];
+		final int iKey = mKeyIndexes[top];
+		final int cost = mCosts[top];
+
+		if(cost > mMaxEditDistance) {
+			mTop--;
+			return;
+		}
+
+		if(--mStatesUntilCheck == 0 && !check()) {
+			// Stop
+			mTop = -1;
+			return;
+		}
+
+		if(canPrune(iKey) && !canBeatWorst(node, cost)) {
+			// Nothing below this node can make the cut
+			mTop--;
+			return;
+		}
+
+		final int valueLength = trie.getValueLength(node);
+		if(iKey >= mComposing.length()) {
+			// End of composing. Look for suggestions below this node and add them.
+			final int trailingEditDistance = trie.getDepth(node) - mPrefixLength - pathLength;
+			final int valueLeft = Math.max(valueLength - iNodeValue, 0);
+			mTop--;
+			push(ADD_ENTER, node, 0, pathLength + valueLeft, iKey, cost + trailingEditDistance);
+			return;
+		}
+
+		if(iNodeValue >= valueLength) {
+			// End of this node's key. Traverse children, most frequent first.
+			mPhases[top] = CHILDREN;
+			mChildIndexes[top] = 0;
+			return;
+		}
+
+		final char c = trie.getValueAt(node, iNodeValue);
+
+		// Skip non-letter characters
+		if(!Character.isLetter(c)
+				&& !Character.isSpaceChar(c)) {
+			mTop--;
+			push(ENTER, node, iNodeValue + 1, pathLength + 1, iKey, cost);
+			return;
+		}
+
+		// This state is done. Its branches replace it on the stack, last branch first, so
+		// they are followed in order: matched key, missing keystroke, double-tap.
+		mTop--;
+		final char keyStroke = mComposing.charAt(iKey);
+
+		// Is this key adjacent the next keystroke?
+		if(cost + INSERT <= mMaxEditDistance
+				&& iKey < mComposing.length() - 1
+				&& mCollator.compareCharToKey(mComposing.charAt(iKey + 1), keyStroke) >= 0) {
+			// Assume it is a double-tap. Skip it and follow node.
+			addToFrontier(node, iNodeValue, pathLength, iKey + 1, cost + INSERT);
+			push(ENTER, node, iNodeValue, pathLength, iKey + 1, cost + INSERT);
+		}
+
+		// Assume this composing is missing a keystroke. Insert missing char and follow node.
+		if(cost + DELETE <= mMaxEditDistance) {
+			push(ENTER, node, iNodeValue + 1, pathLength + 1, iKey, cost + DELETE);
+		}
+
+		// Compare the keystroke to the next character in the trie traversal
+		final int iKeyDistance = mCollator.compareCharToKey(c, keyStroke);
+		if(iKeyDistance >= 0 && iKeyDistance + cost <= mMaxEditDistance) {
+			// Matched key. Follow this node.
+			final int matchCost = iKeyDistance == 0 ? cost : cost + SUBSTITUTE;
+			addToFrontier(node, iNodeValue + 1, pathLength + 1, iKey + 1, matchCost);
+			push(ENTER, node, iNodeValue + 1, pathLength + 1, iKey + 1, matchCost);
+		}
+	}
+
+
+	/**
+	 * Checks if the request expired or the deadline passed, and sets the status if so.
+	 * @return	True if the search can go on.
+	 */
+	private boolean check() {
+		mStatesUntilCheck = CHECK_INTERVAL;
+		if(mSuggestions.isExpired()) {
+			mStatus = CANCELLED;
+		} else if(mDeadline != SuggestionsRequest.NO_DEADLINE && System.nanoTime() - mDeadline > 0) {
+			mStatus = TRUNCATED;
+		}
+
+		return mStatus == COMPLETE;
+	}
+
+
+	private void nextChild() {
+		final Trie trie = mTrie;
+		final int top = mTop;
+		final int node = mNodes[top];
+		final int iChild = mChildIndexes[top]++;
+		if(iChild >= trie.getChildCount(node)) {
+			mTop--;
+			return;
+		}
+
+		final int child = trie.getChildByMaxCount(node, iChild);
+		final int cost = mCosts[top];
+		if(canPrune(mKeyIndexes[top]) && !canBeatWorst(child, cost)) {
+			// Skip only this child. The order by max count is a hint, so a later child
+			// can still have a higher max count.
+			return;
+		}
+
+		push(ENTER, child, 0, mPathLengths[top], mKeyIndexes[top], cost);
+	}
+
+
+	/**
+	 * Adds this node if it's an entry, then its children.
+	 */
+	private void addEntry() {
+		final Trie trie = mTrie;
+		final int top = mTop;
+		final int node = mNodes[top];
+		final int cost = mCosts[top];
+		if(cost > mMaxEditDistance
+				|| !canBeatWorst(node, cost)) {
+			mTop--;
+			return;
+		}
+
+		// Read the count once. A word can be forgotten while it's searched.
+		final int count = trie.getCount(node);
+		if(count > 0) {
+			final double score = mDictionary.getScore(count, mCountSum, cost);
+			// An entry that is worse than the worst suggestion won't be added
+			if(!(score > mSuggestionsWorstScore)
+					&& mCandidates.offer(trie, node, mWordStart, cost, count, score)) {
+				updateWorstScore();
+			}
+		}
+
+		mPhases[top] = ADD_CHILDREN;
+		mChildIndexes[top] = 0;
+	}
+
+
+	/**
+	 * Traverses all children, most frequent first.
+	 */
+	private void addNextChild() {
+		final Trie trie = mTrie;
+		final int top = mTop;
+		final int node = mNodes[top];
+		final int iChild = mChildIndexes[top]++;
+		if(iChild >= trie.getChildCount(node)) {
+			mTop--;
+			return;
+		}
+
+		final int child = trie.getChildByMaxCount(node, iChild);
+		final int valueLength = trie.getValueLength(child);
+		push(ADD_ENTER, child, 0, mPathLengths[top] + valueLength, mKeyIndexes[top], mCosts[top] + valueLength);
+	}
+
+
+	/**
+	 * Checks if any entry in a subtree could still be added to a full list of suggestions.
+	 * The best score in the subtree is at least the score of its highest count at the
+	 * current edit distance, since the edit distance only grows further down. A subtree
+	 * that can only tie the worst suggestion is kept, since ties are broken by word.
+	 */
+	private boolean canBeatWorst(final int node, final int cost) {
+		if(mWorstScore == Double.POSITIVE_INFINITY) {
+			return true;
+		}
+
+		final double frequency = (double) mTrie.getMaxCount(node) / (double) mCountSum;
+		final double minScore = (frequency >= 1 ? 0 : -Math.log(frequency)) + cost;
+
+		return !(minScore > mWorstScore);
+	}
+
+
+	private void updateWorstScore() {
+		mWorstScore = Math.min(mSuggestionsWorstScore, mCandidates.getWorstScore());
+	}
+
+
+	/**
+	 * Don't prune the states that lead to the frontier. The next search needs all of them.
+	 */
+	private boolean canPrune(final int iKey) {
+		return mFrontier == null || mComposing.length() - iKey <= 1;
+	}
+
+
+	/**
+	 * Adds a state to the frontier if it is one keystroke from the end of the composing. Only
+	 * called for states that were just reached by using a keystroke, since the states that
+	 * follow them without using one are found again when resuming.
+	 */
+	private void addToFrontier(
+			final int node,
+			final int iNodeValue,
+			final int pathLength,
+			final int iKey,
+			final int cost) {
+		if(mFrontier != null
+				&& mComposing.length() - iKey == 1
+				&& cost <= mMaxEditDistance) {
+			mFrontier.add(mTrie, node, iNodeValue, pathLength, mWordStart, cost);
+		}
+	}
+
+
+	private void push(
+			final byte phase,
+			final int node,
+			final int iNodeValue,
+			final int pathLength,
+			final int iKey,
+			final int cost) {
+		final int top = ++mTop;
+		if(top == mPhases.length) {
+			growStack();
+		}
+
+		mPhases[top] = phase;
+		mNodes[top] = node;
+		mValueIndexes[top] = iNodeValue;
+		mPathLengths[top] = pathLength;
+		mKeyIndexes[top] = iKey;
+		mCosts[top] = cost;
+	}
+
+
+	private void growStack() {
+		final int capacity = mPhases.length * 2;
+		mPhases = Arrays.copyOf(mPhases, capacity);
+		mNodes = Arrays.copyOf(mNodes, capacity);
+		mValueIndexes = Arrays.copyOf(mValueIndexes, capacity);
+		mPathLengths = Arrays.copyOf(mPathLengths, capacity);
+		mKeyIndexes = Arrays.copyOf(mKeyIndexes, capacity);
+		mCosts = Arrays.copyOf(mCosts, capacity);
+		mChildIndexes = Arrays.copyOf(mChildIndexes, capacity);
+	}
+
+
+
+	/**
+	 * The best entries found so far, best first. Like the suggestions they are ranked by score
+	 * and then by word, and an entry with the same score and word as another is dropped. An
+	 * entry is only a trie node, so its word is only built when it is needed: to add it to the
+	 * suggestions, or to break a tie.
+	 */
+	private static final class Candidates {
+		private final int mMaxSize;
+		private int mSize = 0;
+		private final Trie[] mTries;
+		private final int[] mNodes;
+		private final int[] mWordStarts;
+		private final int[] mCosts;
+		private final int[] mCounts;
+		private final double[] mScores;
+		private final String[] mWords;
+
+
+		private Candidates(final int maxSize) {
+			mMaxSize = maxSize;
+			mTries = new Trie[maxSize];
+			mNodes = new int[maxSize];
+			mWordStarts = new int[maxSize];
+			mCosts = new int[maxSize];
+			mCounts = new int[maxSize];
+			mScores = new double[maxSize];
+			mWords = new String[maxSize];
+		}
+
+
+		/**
+		 * Adds an entry if there is room or it is better than the worst one, which is dropped.
+		 * @return	True if the entry was added.
+		 */
+		private boolean offer(
+				final Trie trie,
+				final int node,
+				final int wordStart,
+				final int cost,
+				final int count,
+				final double score) {
+			// Find where it goes, starting from the worst
+			String word = null;
+			int iCandidate = mSize;
+			for(; iCandidate > 0; iCandidate--) {
+				final double otherScore = mScores[iCandidate - 1];
+				if(otherScore < score) {
+					break;
+				}
+
+				if(otherScore == score) {
+					if(word == null) {
+						word = getWord(trie, node, wordStart);
+					}
+
+					final int compare = getWord(iCandidate - 1).compareTo(word);
+					if(compare == 0) {
+						// Already have it
+						return false;
+					} else if(compare < 0) {
+						break;
+					}
+				}
+			}
+
+			if(iCandidate >= mMaxSize) {
+				return false;
+			}
+
+			// Make room, dropping the worst if full
+			final int moved = Math.min(mSize, mMaxSize - 1) - iCandidate;
+			System.arraycopy(mTries, iCandidate, mTries, iCandidate + 1, moved);
+			System.arraycopy(mNodes, iCandidate, mNodes, iCandidate + 1, moved);
+			System.arraycopy(mWordStarts, iCandidate, mWordStarts, iCandidate + 1, moved);
+			System.arraycopy(mCosts, iCandidate, mCosts, iCandidate + 1, moved);
+			System.arraycopy(mCounts, iCandidate, mCounts, iCandidate + 1, moved);
+			System.arraycopy(mScores, iCandidate, mScores, iCandidate + 1, moved);
+			System.arraycopy(mWords, iCandidate, mWords, iCandidate + 1, moved);
+			mSize = Math.min(mSize + 1, mMaxSize);
+
+			mTries[iCandidate] = trie;
+			mNodes[iCandidate] = node;
+			mWordStarts[iCandidate] = wordStart;
+			mCosts[iCandidate] = cost;
+			mCounts[iCandidate] = count;
+			mScores[iCandidate] = score;
+			mWords[iCandidate] = word;
+
+			return true;
+		}
+
+
+		private int size() {
+			return mSize;
+		}
+
+
+		/**
+		 * @return	The score of the worst entry, or infinity if there is still room.
+		 */
+		private double getWorstScore() {
+			return mSize < mMaxSize ? Double.POSITIVE_INFINITY : mScores[mSize - 1];
+		}
+
+
+		private String getWord(final int iCandidate) {
+			if(mWords[iCandidate] == null) {
+				mWords[iCandidate] = getWord(mTries[iCandidate], mNodes[iCandidate], mWordStarts[iCandidate]);
+			}
+
+			return mWords[iCandidate];
+		}
+
+
+		private int getCost(final int iCandidate) {
+			return mCosts[iCandidate];
+		}
+
+
+		private int getCount(final int iCandidate) {
+			return mCounts[iCandidate];
+		}
+
+
+		private void clear() {
+			Arrays.fill(mTries, 0, mSize, null);
+			Arrays.fill(mWords, 0, mSize, null);
+			mSize = 0;
+		}
+
+
+		private static String getWord(final Trie trie, final int node, final int wordStart) {
+			return trie.getWord(node).substring(wordStart);
+		}
+	}
+}
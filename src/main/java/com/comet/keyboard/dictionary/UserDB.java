@@ -47,50 +47,6 @@ public final class UserDB {
 	}
 
 
-	public void insertOrIncrement(final String language, final String word, final int increment) {
-		Assert.assertTrue(language != null);
-		Assert.assertTrue(word != null);
-		Assert.assertTrue(increment > 0);
-
-		try {
-			final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
-			// Append new shortcut item to database
-			final ContentValues values = new ContentValues();
-			values.put(LEXICON_FIELD_LANG, language);
-			values.put(LEXICON_FIELD_WORD, word);
-			int count = 0;
-
-			final Cursor cursor = db.query(
-					"lexicon",
-					new String[] {"count"},
-					LEXICON_FIELD_WORD + "=? AND " + LEXICON_FIELD_LANG + "='" + mLanguage + "'",
-					null,
-					null,
-					null,
-					"count DESC",
-					"1");
-			if (cursor != null) {
-				if (cursor.moveToNext()) {
-					count = cursor.getInt(0);
-				}
-				cursor.close();
-			}
-
-			final int newCount = count + increment;
-			values.put(LEXICON_FIELD_COUNT, newCount);
-
-			long result = db.update(LEXICON_TABLE_NAME, values, "word=?", new String[]{word});
-			if (result == 0) {
-				db.insert(LEXICON_TABLE_NAME, null, values);
-			}
-		} catch (SQLiteException e) {
-			Log.e(KeyboardApp.LOG_TAG, "Failed to add word to " + LEXICON_TABLE_NAME, e);
-		} finally {
-			mOpenHelper.close();
-		}
-	}
-
-
 	public void deleteWordFromLexicon(final String language, final String word) {
 		try {
 			final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
@@ -208,41 +164,28 @@ public final class UserDB {
 	 */
 
 	/**
-	 * Loads a lexicon from a table into a trie
-	 * @param lexicon		The trie to fill
-	 * @param nRecords		The maximum number of records to load
-	 * @return				The sum of all counts
+	 * Copies the words learned before there was a learning journal into one.
+	 * @param journal	The journal of this language
 	 */
-	public final int loadLanguage(final TrieDictionary lexicon, final int nRecords) {
+	final void copyLanguage(final LearningJournal journal) {
 		final SQLiteDatabase db = mOpenHelper.getReadableDatabase();
 
-		int countSum = 0;
 		try {
-			String limit = null;
-			if(nRecords > 0) {
-				limit = String.valueOf(nRecords);
-			}
 			final Cursor cursor = db.query(
 					"lexicon",
 					new String[] {"word", "count"},
-					LEXICON_FIELD_COUNT + ">=0 AND " + LEXICON_FIELD_LANG + "='" + mLanguage + "'",
-					null,
+					LEXICON_FIELD_COUNT + ">0 AND " + LEXICON_FIELD_LANG + "=?",
+					new String[] {mLanguage},
 					null,
 					null,
-					"count DESC",
-					limit);
+					null);
 
 			if (cursor == null) {
-				return 0;
+				return;
 			}
 
-			while(cursor.moveToNext() && !lexicon.isCancelled()) {
-				String word = cursor.getString(0);
-				final int countUser = cursor.getInt(1);
-				countSum += countUser;
-
-				final int countLang = lexicon.getCount(word);
-				lexicon.insert(word, countLang + countUser);
+			while(cursor.moveToNext()) {
+				journal.increment(cursor.getString(0), cursor.getInt(1));
 			}
 
 			cursor.close();
@@ -252,13 +195,6 @@ public final class UserDB {
 		} finally {
 			mOpenHelper.close();
 		}
-
-		return countSum;
-	}
-
-
-	public final int loadLanguage(final TrieDictionary lexicon) {
-		return loadLanguage(lexicon, -1);
 	}
 
 
@@ -0,0 +1,42 @@
+package com.comet.keyboard.dictionary;
+
+/**
+ * A fixed-size set of words with open addressing, for removing duplicate suggestions without
+ * allocating an entry for every word.
+ * @author Barry Fruitman
+ */
+final class WordSet {
+    private final String[] mWords;
+    private final int mMask;
+
+
+    /**
+     * @param maxSize   The most words that will be added
+     */
+    WordSet(final int maxSize) {
+        // At most half full, so probes are short
+        final int capacity = Integer.highestOneBit(Math.max(maxSize * 2 - 1, 1)) << 1;
+        mWords = new String[capacity];
+        mMask = capacity - 1;
+    }
+
+
+    /**
+     * @return  True if the word was added, false if it was already in the set.
+     */
+    boolean add(final String word) {
+        final int hash = word.hashCode();
+        int iWord = (hash ^ (hash >>> 16)) & mMask;
+        while(mWords[iWord] != null) {
+            if(mWords[iWord].equals(word)) {
+                return false;
+            }
+
+            iWord = (iWord + 1) & mMask;
+        }
+
+        mWords[iWord] = word;
+
+        return true;
+    }
+}
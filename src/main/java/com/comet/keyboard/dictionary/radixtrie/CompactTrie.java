@@ -0,0 +1,469 @@
+package com.comet.keyboard.dictionary.radixtrie;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+
+/**
+ * An immutable, array-backed radix trie for the base lexicon. Nodes are laid out in
+ * breadth-first order so the children of each node are contiguous, and a node is just an
+ * index into a handful of primitive arrays: no per-node objects, child arrays or parent
+ * pointers. Children are sorted by the first char of their value, and the root and its
+ * children also have a direct index by char. Only the counts can change after the trie is
+ * compiled; new words belong in a mutable {@link RadixTrie} overlay.
+ *
+ * <p>The arrays are held in buffers so a compiled trie can be written to a file and later
+ * used in place from a memory-mapped image (see {@link #wrap(ByteBuffer)}). The arrays derived
+ * from the counts and values are written too, so opening an image doesn't rebuild them.
+ *
+ * @author Barry Fruitman
+ */
+public final class CompactTrie implements Trie {
+	private static final int ROOT = 0;
+
+	private static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	// The root and its children have the most children, so they get a direct index by char.
+	private static final int INDEX_SLOTS = 64;
+
+	// Children of node i are [mFirstChild[i], mFirstChild[i+1])
+	private final IntBuffer mFirstChild;
+	// Value of node i is mValues[mValueStart[i], mValueStart[i+1])
+	private final IntBuffer mValueStart;
+	private final CharBuffer mValues;
+	private final IntBuffer mCounts;
+	private final IntBuffer mDepths;
+	private final int mNodeCount;
+	// The highest count in each subtree
+	private final IntBuffer mMaxCounts;
+	// The children of each node in order of descending max count, in the same slots as mFirstChild
+	private final IntBuffer mChildrenByMaxCount;
+	// Child of node i (i < mIndexedCount) starting with c is mIndex[i * INDEX_SLOTS + getSlot(c)]
+	private final IntBuffer mIndex;
+	private final int mIndexedCount;
+
+
+	private CompactTrie(IntBuffer firstChild, IntBuffer valueStart, CharBuffer values, IntBuffer counts, IntBuffer depths) {
+		mFirstChild = firstChild;
+		mValueStart = valueStart;
+		mValues = values;
+		mCounts = counts;
+		mDepths = depths;
+		mNodeCount = counts.capacity();
+		mIndexedCount = getChildCount(ROOT) + 1;
+		mIndex = IntBuffer.wrap(buildIndex());
+		mMaxCounts = IntBuffer.wrap(buildMaxCounts());
+		mChildrenByMaxCount = IntBuffer.wrap(buildChildrenByMaxCount());
+	}
+
+
+	private CompactTrie(IntBuffer firstChild, IntBuffer valueStart, CharBuffer values, IntBuffer counts, IntBuffer depths,
+			IntBuffer maxCounts, IntBuffer childrenByMaxCount, IntBuffer index) {
+		mFirstChild = firstChild;
+		mValueStart = valueStart;
+		mValues = values;
+		mCounts = counts;
+		mDepths = depths;
+		mNodeCount = counts.capacity();
+		mIndexedCount = index.capacity() / INDEX_SLOTS;
+		mIndex = index;
+		mMaxCounts = maxCounts;
+		mChildrenByMaxCount = childrenByMaxCount;
+	}
+
+
+	/**
+	 * Children always come after their parent, so one backward pass finds every
+	 * subtree's highest count.
+	 */
+	private int[] buildMaxCounts() {
+		final int[] maxCounts = new int[mNodeCount];
+		for(int node = mNodeCount - 1; node >= 0; node--) {
+			int maxCount = mCounts.get(node);
+			for(int child = mFirstChild.get(node); child < mFirstChild.get(node + 1); child++) {
+				maxCount = Math.max(maxCount, maxCounts[child]);
+			}
+			maxCounts[node] = maxCount;
+		}
+
+		return maxCounts;
+	}
+
+
+	/**
+	 * Builds the direct index of the root and its children. They are nodes 0 to the
+	 * root's child count, since nodes are laid out breadth-first.
+	 */
+	private int[] buildIndex() {
+		final int[] index = new int[mIndexedCount * INDEX_SLOTS];
+		Arrays.fill(index, NO_NODE);
+		for(int node = 0; node < mIndexedCount; node++) {
+			final int childCount = getChildCount(node);
+			for(int iChild = 0; iChild < childCount; iChild++) {
+				final int child = getChild(node, iChild);
+				final int slot = getSlot(getValueAt(child, 0));
+				if(slot >= 0) {
+					index[node * INDEX_SLOTS + slot] = child;
+				}
+			}
+		}
+
+		return index;
+	}
+
+
+	/**
+	 * @return	The index slot of c, or -1 if c has no slot.
+	 */
+	private static int getSlot(char c) {
+		if(c >= 'a' && c <= 'z')
+			return c - 'a';
+		if(c >= 'A' && c <= 'Z')
+			return c - 'A' + 26;
+		if(c >= '0' && c <= '9')
+			return c - '0' + 52;
+		if(c == '\'')
+			return 62;
+		if(c == '-')
+			return 63;
+
+		return -1;
+	}
+
+
+	/**
+	 * Compiles another trie into a compact trie. The source is not modified.
+	 * @param source	The trie to compile
+	 * @return			A compact copy of source
+	 */
+	public static CompactTrie compile(Trie source) {
+		// Lay out the nodes in breadth-first order.
+		int[] order = new int[64];
+		int[] parents = new int[64];
+		int[] firstChild = new int[64];
+		int nodeCount = 1;
+		int valueCount = 0;
+		order[0] = source.getRoot();
+		parents[0] = -1;
+		for(int iNode = 0; iNode < nodeCount; iNode++) {
+			final int node = order[iNode];
+			final int childCount = source.getChildCount(node);
+			valueCount += source.getValueLength(node);
+
+			if(nodeCount + childCount > order.length) {
+				final int length = Math.max(order.length * 2, nodeCount + childCount);
+				order = copyOf(order, length);
+				parents = copyOf(parents, length);
+				firstChild = copyOf(firstChild, length);
+			}
+
+			firstChild[iNode] = nodeCount;
+			for(int iChild = 0; iChild < childCount; iChild++) {
+				// Insert in order of first char, so children can be binary-searched.
+				final int child = source.getChild(node, iChild);
+				final char c = source.getValueAt(child, 0);
+				int iOrder = nodeCount++;
+				// Set before sorting, since every child of this node has the same parent
+				parents[iOrder] = iNode;
+				while(iOrder > firstChild[iNode] && source.getValueAt(order[iOrder - 1], 0) > c) {
+					order[iOrder] = order[iOrder - 1];
+					iOrder--;
+				}
+				order[iOrder] = child;
+			}
+		}
+
+		final int[] compactFirstChild = copyOf(firstChild, nodeCount + 1);
+		compactFirstChild[nodeCount] = nodeCount;
+		final int[] valueStart = new int[nodeCount + 1];
+		final char[] values = new char[valueCount];
+		final int[] counts = new int[nodeCount];
+		final int[] depths = new int[nodeCount];
+
+		int iValues = 0;
+		for(int iNode = 0; iNode < nodeCount; iNode++) {
+			final int node = order[iNode];
+			final int length = source.getValueLength(node);
+			valueStart[iNode] = iValues;
+			for(int iValue = 0; iValue < length; iValue++) {
+				values[iValues++] = source.getValueAt(node, iValue);
+			}
+
+			counts[iNode] = source.getCount(node);
+			depths[iNode] = iNode == ROOT ? 0 : depths[parents[iNode]] + length;
+		}
+		valueStart[nodeCount] = iValues;
+
+		return new CompactTrie(
+				IntBuffer.wrap(compactFirstChild),
+				IntBuffer.wrap(valueStart),
+				CharBuffer.wrap(values),
+				IntBuffer.wrap(counts),
+				IntBuffer.wrap(depths));
+	}
+
+
+	/**
+	 * Uses a trie written by {@link #writeTo(ByteBuffer)} in place. The counts and max counts
+	 * change when words are learned, so if in is read-only they are copied. Map images with
+	 * {@link java.nio.channels.FileChannel.MapMode#PRIVATE} to use them in place too.
+	 * @param in	The serialized trie, positioned at its start. On return it is positioned
+	 *              after the trie.
+	 * @return		The trie
+	 * @throws IllegalArgumentException	If in does not hold a valid trie.
+	 */
+	public static CompactTrie wrap(ByteBuffer in) {
+		in.order(BYTE_ORDER);
+		final int nodeCount = in.getInt();
+		final int valueCount = in.getInt();
+		final int indexedCount = in.getInt();
+		if(nodeCount < 1 || valueCount < 0 || indexedCount < 1 || indexedCount > nodeCount
+				|| getByteSize(nodeCount, valueCount, indexedCount) - 12 > in.remaining()) {
+			throw new IllegalArgumentException("Invalid trie: " + nodeCount + " nodes, " + valueCount + " chars");
+		}
+
+		final IntBuffer firstChild = sliceInts(in, nodeCount + 1);
+		final IntBuffer valueStart = sliceInts(in, nodeCount + 1);
+		final IntBuffer counts = sliceWritableInts(in, nodeCount);
+		final IntBuffer depths = sliceInts(in, nodeCount);
+		final IntBuffer maxCounts = sliceWritableInts(in, nodeCount);
+		final IntBuffer childrenByMaxCount = sliceInts(in, nodeCount);
+		final IntBuffer index = sliceInts(in, indexedCount * INDEX_SLOTS);
+
+		final ByteBuffer values = in.slice().order(BYTE_ORDER);
+		values.limit(valueCount * 2);
+		in.position(in.position() + valueCount * 2);
+
+		return new CompactTrie(firstChild, valueStart, values.asCharBuffer(), counts, depths,
+				maxCounts, childrenByMaxCount, index);
+	}
+
+
+	private static IntBuffer sliceInts(ByteBuffer in, int length) {
+		final ByteBuffer slice = in.slice().order(BYTE_ORDER);
+		slice.limit(length * 4);
+		in.position(in.position() + length * 4);
+
+		return slice.asIntBuffer();
+	}
+
+
+	/**
+	 * Slices ints that can be changed, or copies them if in is read-only.
+	 */
+	private static IntBuffer sliceWritableInts(ByteBuffer in, int length) {
+		final IntBuffer slice = sliceInts(in, length);
+		if(!slice.isReadOnly()) {
+			return slice;
+		}
+
+		final IntBuffer copy = IntBuffer.allocate(length);
+		copy.put(slice).clear();
+
+		return copy;
+	}
+
+
+	/**
+	 * Writes this trie in the format read by {@link #wrap(ByteBuffer)}.
+	 * @param out	The buffer to write to. It must have {@link #getByteSize()} bytes remaining.
+	 */
+	public void writeTo(ByteBuffer out) {
+		out.order(BYTE_ORDER);
+		out.putInt(mNodeCount);
+		out.putInt(mValues.capacity());
+		out.putInt(mIndexedCount);
+		putInts(out, mFirstChild);
+		putInts(out, mValueStart);
+		putInts(out, mCounts);
+		putInts(out, mDepths);
+		putInts(out, mMaxCounts);
+		putInts(out, mChildrenByMaxCount);
+		putInts(out, mIndex);
+		for(int iValue = 0; iValue < mValues.capacity(); iValue++) {
+			out.putChar(mValues.get(iValue));
+		}
+	}
+
+
+	private static void putInts(ByteBuffer out, IntBuffer ints) {
+		for(int i = 0; i < ints.capacity(); i++) {
+			out.putInt(ints.get(i));
+		}
+	}
+
+
+	/**
+	 * @return	The number of bytes written by {@link #writeTo(ByteBuffer)}.
+	 */
+	public int getByteSize() {
+		return getByteSize(mNodeCount, mValues.capacity(), mIndexedCount);
+	}
+
+
+	private static int getByteSize(int nodeCount, int valueCount, int indexedCount) {
+		return 12 + (nodeCount + 1) * 8 + nodeCount * 16 + indexedCount * INDEX_SLOTS * 4 + valueCount * 2;
+	}
+
+
+	@Override
+	public int getRoot() {
+		return ROOT;
+	}
+
+
+	/**
+	 * @return	The number of nodes in this trie, including the root.
+	 */
+	public int size() {
+		return mNodeCount;
+	}
+
+
+	@Override
+	public int getChildCount(int node) {
+		return mFirstChild.get(node + 1) - mFirstChild.get(node);
+	}
+
+
+	@Override
+	public int getChild(int node, int iChild) {
+		return mFirstChild.get(node) + iChild;
+	}
+
+
+	@Override
+	public int findChild(int node, char c) {
+		if(node < mIndexedCount) {
+			final int slot = getSlot(c);
+			if(slot >= 0) {
+				return mIndex.get(node * INDEX_SLOTS + slot);
+			}
+		}
+
+		return Trie.super.findChild(node, c);
+	}
+
+
+	private int[] buildChildrenByMaxCount() {
+		final int[] children = new int[mNodeCount];
+		for(int node = 0; node < mNodeCount; node++) {
+			final int first = mFirstChild.get(node);
+			final int end = mFirstChild.get(node + 1);
+			for(int child = first; child < end; child++) {
+				int iOrder = child;
+				while(iOrder > first && mMaxCounts.get(children[iOrder - 1]) < mMaxCounts.get(child)) {
+					children[iOrder] = children[iOrder - 1];
+					iOrder--;
+				}
+				children[iOrder] = child;
+			}
+		}
+
+		return children;
+	}
+
+
+	@Override
+	public int getChildByMaxCount(int node, int iChild) {
+		return mChildrenByMaxCount.get(mFirstChild.get(node) + iChild);
+	}
+
+
+	@Override
+	public int getValueLength(int node) {
+		return mValueStart.get(node + 1) - mValueStart.get(node);
+	}
+
+
+	@Override
+	public char getValueAt(int node, int iValue) {
+		return mValues.get(mValueStart.get(node) + iValue);
+	}
+
+
+	@Override
+	public int getCount(int node) {
+		return mCounts.get(node);
+	}
+
+
+	@Override
+	public void setCount(int node, int count) {
+		// Raise the highest count of this node and its ancestors first, so a concurrent
+		// search doesn't skip the node because of it
+		int ancestor = node;
+		while(mMaxCounts.get(ancestor) < count) {
+			mMaxCounts.put(ancestor, count);
+			if(ancestor == ROOT)
+				break;
+			ancestor = getParent(ancestor);
+		}
+
+		mCounts.put(node, count);
+	}
+
+
+	@Override
+	public int getMaxCount(int node) {
+		return mMaxCounts.get(node);
+	}
+
+
+	@Override
+	public int getDepth(int node) {
+		return mDepths.get(node);
+	}
+
+
+	@Override
+	public String getWord(int node) {
+		final char[] word = new char[mDepths.get(node)];
+		int iWord = word.length;
+		while(node != ROOT) {
+			for(int iValue = getValueLength(node) - 1; iValue >= 0; iValue--) {
+				word[--iWord] = getValueAt(node, iValue);
+			}
+			node = getParent(node);
+		}
+
+		return new String(word);
+	}
+
+
+	/**
+	 * Finds the parent of a node without storing parent pointers. Since nodes are laid out
+	 * breadth-first, the parent is the node whose child range contains this node.
+	 */
+	private int getParent(int node) {
+		int low = 0;
+		int high = node - 1;
+		while(low < high) {
+			final int mid = (low + high + 1) >>> 1;
+			if(mFirstChild.get(mid) <= node) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+
+		return low;
+	}
+
+
+	private static int[] copyOf(int[] original, int newLength) {
+		final int[] copy = new int[newLength];
+		System.arraycopy(original, 0, copy, 0, Math.min(original.length, newLength));
+
+		return copy;
+	}
+
+
+	@Override
+	public String toString() {
+		return "CompactTrie(" + mNodeCount + " nodes, " + mValues.capacity() + " chars)";
+	}
+}
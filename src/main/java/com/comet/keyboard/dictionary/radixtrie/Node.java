@@ -2,35 +2,75 @@ package com.comet.keyboard.dictionary.radixtrie;
 
 
 /**
+ * A node in a {@link RadixTrie}.
+ *
+ * <p>A node has one writer and can have many readers that don't lock. Its value never
+ * changes, and its children are replaced with a new array rather than changed in place, so a
+ * reader sees every child either fully before or fully after a change. The count and max
+ * count are volatile too, so a reader sees a count as soon as it's set, and never sees it
+ * before the max count that covers it.
+ *
  * @author Barry Fruitman
  */
 public class Node {
-	private char[] mValue;
-	private Node[] mChildren;
-	private Node mParent;
-	private int mCount;
+	private final int mId;
+	private final char[] mValue;
+	private volatile Node[] mChildren;
+	private volatile Node mParent;
+	private volatile int mCount;
+	// The length of the word that ends at the end of this node's value. It doesn't change
+	// when the node is split, since a split only removes chars from the front of the value.
+	private final int mDepth;
+	// The highest count in this subtree. See Trie.getMaxCount().
+	private volatile int mMaxCount;
 
 
 	private static int mNodeCount = 0;
-	Node(char value[], int count) {
+	Node(int id, char value[], int depth, int count) {
+		mId = id;
 		mValue = value;
+		mDepth = depth;
 		mCount = count;
+		mMaxCount = count;
 		mChildren = new Node[0];
 		
 		mNodeCount++;
 	}
 	
 	
+	public int getId() {
+		return mId;
+	}
+
+
+	public int getDepth() {
+		return mDepth;
+	}
+
+
 	public int getCount() {
 		return mCount;
 	}
 	
 	
 	public void setCount(int count) {
+		// Raise the max first, so a reader doesn't skip this node because of it
+		raiseMaxCount(count);
 		mCount = count;
 	}
 
 
+	public int getMaxCount() {
+		return mMaxCount;
+	}
+
+
+	private void raiseMaxCount(int count) {
+		for(Node node = this; node != null && node.mMaxCount < count; node = node.mParent)
+			node.mMaxCount = count;
+	}
+
+
 	public void removeEntry() {
 		mCount = 0;
 	}
@@ -60,10 +100,16 @@ public class Node {
 	}
 	
 	
+	/**
+	 * Replaces a child with a node that has the same first char, in a copy of the children.
+	 */
 	protected void replaceChild(Node oldChild, Node newChild) {
 		newChild.mParent = this;
-		int i = findChild(oldChild.mValue);
-		mChildren[i] = newChild;
+		raiseMaxCount(newChild.mMaxCount);
+
+		final Node[] children = copyOf(mChildren, mChildren.length);
+		children[findChild(oldChild.mValue)] = newChild;
+		mChildren = children;
 	}
 
 
@@ -83,15 +129,69 @@ public class Node {
 	}
 	
 	
+	/**
+	 * Replaces all children at once. Used by {@link RadixTrie.Builder}, which knows the
+	 * final children of a node before it creates it, and to split a node.
+	 */
+	protected void setChildren(Node[] children) {
+		for(Node child : children) {
+			child.mParent = this;
+			raiseMaxCount(child.mMaxCount);
+		}
+		mChildren = children;
+	}
+
+
+	/**
+	 * Gives this node the children of a node it will replace, i.e. when splitting it. The
+	 * children keep their parent, which has the same word, until adoptChildren() is called.
+	 */
+	protected void shareChildren(Node other) {
+		mChildren = other.mChildren;
+		raiseMaxCount(other.mMaxCount);
+	}
+
+
+	/**
+	 * Makes this node the parent of its children, after shareChildren().
+	 */
+	protected void adoptChildren() {
+		for(Node child : mChildren) {
+			child.mParent = this;
+		}
+	}
+
+
+	/**
+	 * Finds a child by the first char of its value.
+	 * @param c	The first char
+	 * @return	The index of the child, or -1 if there is none.
+	 */
+	protected int findChild(char c) {
+		final Node[] children = mChildren;
+		for(int i = 0; i < children.length; i++) {
+			if(children[i].mValue[0] == c)
+				return i;
+		}
+
+		return -1;
+	}
+
+
+	/**
+	 * Adds a child after the others, in a copy of the children. Children aren't sorted, so
+	 * a reader that is going through them by index doesn't skip or repeat one. This gives up
+	 * the binary search of sorted children: findChild() scans them instead. Only the overlay
+	 * is a RadixTrie once the dictionary is loaded, and its nodes have few children, so the
+	 * scan costs about the same. The base CompactTrie keeps its sorted children and index.
+	 */
 	protected void addChild(Node child) {
 		child.mParent = this;
-		mChildren = Node.copyOf(mChildren, mChildren.length+1);
-		mChildren[mChildren.length-1] = child;
-	}
-	
-	
-	protected void setValue(char[] value) {
-		mValue = value;
+		raiseMaxCount(child.mMaxCount);
+
+		final Node[] children = copyOf(mChildren, mChildren.length + 1);
+		children[mChildren.length] = child;
+		mChildren = children;
 	}
 
 
@@ -161,16 +261,18 @@ public class Node {
 	}
 
 
-	// Rebuild the word by following the parent path
+	// Rebuild the word by following the parent path, filling it in from the end
 	public String getWord() {
-		StringBuilder word = new StringBuilder();
+		final char[] word = new char[mDepth];
+		int iWord = mDepth;
 		Node node = this;
 		while(node.mParent != null) {
-			word.insert(0, node.mValue);
+			iWord -= node.mValue.length;
+			System.arraycopy(node.mValue, 0, word, iWord, node.mValue.length);
 			node = node.mParent;
 		}
-		
-		return word.toString();
+
+		return new String(word);
 	}
 
 
@@ -2,30 +2,72 @@ package com.comet.keyboard.dictionary.radixtrie;
 
 import com.comet.keyboard.dictionary.radixtrie.Node;
 
+import java.util.ArrayList;
 
-public class RadixTrie {
+
+public class RadixTrie implements Trie {
 	protected Node mRoot;
 	protected int mCountSum = 0;
+	// Only ever appended to. Read without locking, see Node.
+	private volatile Node[] mNodes;
+	private int mSize;
 
 	public RadixTrie() {
-		mRoot = new Node(new char[] {' '}, 0);
+		clear();
+	}
+
+
+	@Override
+	public final int getRoot() {
+		return mRoot.getId();
+	}
+
+
+	public final Node getNode(int node) {
+		return mNodes[node];
+	}
+
+
+	/**
+	 * @return	The number of nodes in this trie, including the root.
+	 */
+	public final int size() {
+		return mSize;
 	}
 
 
-	public final Node getRoot() {
-		return mRoot;
+	private Node newNode(char[] value, int depth, int count) {
+		Node[] nodes = mNodes;
+		if(mSize == nodes.length) {
+			nodes = Node.copyOf(nodes, mSize * 2);
+		}
+
+		final Node node = new Node(mSize, value, depth, count);
+		nodes[mSize++] = node;
+		mNodes = nodes;
+
+		return node;
 	}
 
 
 
+	/**
+	 * Adds a word or changes its count. There can be one writer at a time, but searches can
+	 * read the trie while it is changed. Nodes that a search may be in aren't changed, except
+	 * for their counts. See {@link Node}.
+	 */
 	public void insert(String word, int count) {
+		if(word.isEmpty())
+			return;
+
 		insert(word, mRoot, word.toCharArray(), count);
 		mCountSum += count;
 	}
 	protected void insert(String word, Node node, char[] s, int count) {
-		// Scan children for matching prefixes
-		Node[] children = node.getChildren();
-		for(Node child : children) {
+		// Only the child that starts with the same char can share a prefix
+		final int iChild = node.findChild(s[0]);
+		if(iChild >= 0) {
+			final Node child = node.getChildren()[iChild];
 			char[] value = child.getValue();
 			int nPrefix = matchingPrefixLength(value, s, mInsertComparator);
 
@@ -45,15 +87,20 @@ public class RadixTrie {
 				}
 
 				if(value.length > nPrefix) {
-					// Split this child into two descendants.
-					Node newChild = new Node(Node.copyOfRange(s, 0, nPrefix), nPrefix == s.length ? count : 0);
-					node.replaceChild(child, newChild);
+					// Split this child into two descendants. Build them aside and replace the
+					// child with them in one step. The child itself is left alone, since a
+					// search may be in it.
+					Node tail = newNode(Node.copyOfRange(value, nPrefix, value.length), child.getDepth(), child.getCount());
+					tail.shareChildren(child);
 
-					child.setValue(Node.copyOfRange(value, nPrefix, value.length));
-					newChild.addChild(child);
+					Node newChild = newNode(Node.copyOfRange(s, 0, nPrefix), node.getDepth() + nPrefix, nPrefix == s.length ? count : 0);
+					newChild.addChild(tail);
 
 					if(s.length > nPrefix)
-						newChild.addChild(new Node(Node.copyOfRange(s, nPrefix, s.length), count));
+						newChild.addChild(newNode(Node.copyOfRange(s, nPrefix, s.length), node.getDepth() + s.length, count));
+
+					node.replaceChild(child, newChild);
+					tail.adoptChildren();
 
 					return;
 				}
@@ -61,7 +108,7 @@ public class RadixTrie {
 		}
 
 		// No children have a matching prefix. Insert new node.
-		node.addChild(new Node(s, count));
+		node.addChild(newNode(s, node.getDepth() + s.length, count));
 	}
 
 	
@@ -75,85 +122,86 @@ public class RadixTrie {
 	
 	
 	
-	public Node findNode(CharSequence prefix, CharComparator comparator) {
-		return findNode(prefix, 0, mRoot, comparator);
+	public interface CharComparator {
+		public int compareChars(char c1, char c2);
 	}
 
 
 
-	private Node findNode(CharSequence prefix, int iString, Node node, CharComparator comparator) {
-		if(iString >= prefix.length())
-			return null;
 
-		for(Node child : node.getChildren()) {
-			char[] value = child.getValue();
-			int iMatches = matches(prefix, iString, value, comparator);
-			if(iMatches > 0) {
-				if(iString + iMatches >= prefix.length()) {
-					return child;
-				} else if(iMatches < value.length)
-					continue;	// Try the next sibling.
-
-				if(child.getChildren().length == 0)
-					// No grandchildren
-					continue;
-
-				// Recursively search the next child node
-				Node result = findNode(prefix, iString + value.length, child, comparator);
-				if(result != null)
-					return result;
-			}
+	private int matchingPrefixLength(final char[] l, final char[] r, CharComparator comparator) {
+		int n = Math.min(l.length, r.length);
+
+		for(int i = 0; i < n; i++) {
+			if(comparator.compareChars(l[i], r[i]) != 0)
+				return i;
 		}
 
-		return null;
+		return n;
 	}
 
 
-	public interface CharComparator {
-		public int compareChars(char c1, char c2);
+
+	@Override
+	public int getChildCount(int node) {
+		return mNodes[node].getChildren().length;
 	}
 
 
+	@Override
+	public int getChild(int node, int iChild) {
+		return mNodes[node].getChildren()[iChild].getId();
+	}
 
 
-	/**
-	 * Performs a case-insensitive match between a node value and a substring for find()
-	 * @param string	The string to match
-	 * @param iString	The starting index in string
-	 * @param value		The node value to compare against
-	 * @return			The number of matching characters
-	 */
-	private int matches(CharSequence string, int iString, char[] value, CharComparator comparator) {
-		int iMatches = 0;
-		for(int iValue = 0; iValue < value.length; iValue++) {
-			if(iString + iValue >= string.length())
-				return iMatches;
-
-			if(comparator.compareChars(string.charAt(iString + iValue), value[iValue]) != 0) {
-				if(!Character.isLetter(value[iValue])) {
-					iString--;
-					continue;
-				} else	
-					return iMatches;
-			}
-			
-			iMatches++;
-		}
-		
-		return iMatches;
+	@Override
+	public int findChild(int node, char c) {
+		final Node parent = mNodes[node];
+		final int iChild = parent.findChild(c);
+
+		return iChild >= 0 ? parent.getChildren()[iChild].getId() : NO_NODE;
 	}
 
 
-	
-	private int matchingPrefixLength(final char[] l, final char[] r, CharComparator comparator) {
-		int n = Math.min(l.length, r.length);
+	@Override
+	public int getValueLength(int node) {
+		return mNodes[node].getValue().length;
+	}
 
-		for(int i = 0; i < n; i++) {
-			if(comparator.compareChars(l[i], r[i]) != 0)
-				return i;
-		}
 
-		return n;
+	@Override
+	public char getValueAt(int node, int iValue) {
+		return mNodes[node].getValue()[iValue];
+	}
+
+
+	@Override
+	public int getCount(int node) {
+		return mNodes[node].getCount();
+	}
+
+
+	@Override
+	public void setCount(int node, int count) {
+		mNodes[node].setCount(count);
+	}
+
+
+	@Override
+	public int getMaxCount(int node) {
+		return mNodes[node].getMaxCount();
+	}
+
+
+	@Override
+	public int getDepth(int node) {
+		return mNodes[node].getDepth();
+	}
+
+
+	@Override
+	public String getWord(int node) {
+		return mNodes[node].getWord();
 	}
 
 
@@ -171,7 +219,179 @@ public class RadixTrie {
 
 
 	public void clear() {
-		mRoot = new Node(new char[] {' '}, 0);
+		mNodes = new Node[16];
+		mSize = 0;
+		mRoot = newNode(new char[] {' '}, 0, 0);
 		mCountSum = 0;
 	}
-}
\ No newline at end of file
+
+
+
+	/**
+	 * Builds a trie from words in sorted order (see {@link String#compareTo}) in a single
+	 * pass. The builder only keeps the path to the last word open, and each node is created
+	 * once with its final value and an exact-size child array, so there is no searching,
+	 * splitting or array copying like there is with insert().
+	 *
+	 * <p>Words that are out of order are inserted normally when the trie is built. A word
+	 * that is added more than once keeps its last count, same as insert().
+	 */
+	public static final class Builder {
+		private final RadixTrie mTrie = new RadixTrie();
+		// The path to the last word. mPath[0] is the root.
+		private Frame[] mPath = new Frame[16];
+		private int mPathLength = 1;
+		private char[] mLastWord = null;
+		private final ArrayList<String> mUnsortedWords = new ArrayList<>();
+		private final ArrayList<Integer> mUnsortedCounts = new ArrayList<>();
+		private boolean mBuilt = false;
+
+
+		public Builder() {
+			mPath[0] = new Frame();
+		}
+
+
+		/**
+		 * Adds a word to the trie.
+		 * @param word	The word to add. For a single-pass build it must not sort before the
+		 *              previous word.
+		 * @param count	The word's count
+		 * @return		This builder
+		 */
+		public Builder add(String word, int count) {
+			if(mBuilt) {
+				throw new IllegalStateException("Trie already built");
+			}
+
+			final char[] chars = word.toCharArray();
+			final int nPrefix = mLastWord == null ? 0 : matchingPrefixLength(chars, mLastWord);
+			if(chars.length == 0 || (mLastWord != null && compare(chars, mLastWord, nPrefix) < 0)) {
+				mUnsortedWords.add(word);
+				mUnsortedCounts.add(count);
+				return this;
+			}
+
+			mTrie.mCountSum += count;
+
+			if(nPrefix == chars.length && nPrefix == mLastWord.length) {
+				// Same word again.
+				mPath[mPathLength - 1].mCount = count;
+				return this;
+			}
+
+			// Close the nodes on the last word's path that this word doesn't share.
+			while(mPathLength > 1 && mPath[mPathLength - 1].mStart >= nPrefix) {
+				closeFrame();
+			}
+
+			final Frame top = mPath[mPathLength - 1];
+			if(top.mEnd > nPrefix) {
+				// This word branches off in the middle of the last node. Split it.
+				final Node tail = top.toNode(mTrie, nPrefix);
+				top.mEnd = nPrefix;
+				top.mCount = 0;
+				top.mChildCount = 0;
+				top.addChild(tail);
+			}
+
+			if(mPathLength == mPath.length) {
+				final Frame[] path = new Frame[mPath.length * 2];
+				System.arraycopy(mPath, 0, path, 0, mPath.length);
+				mPath = path;
+			}
+			if(mPath[mPathLength] == null) {
+				mPath[mPathLength] = new Frame();
+			}
+			mPath[mPathLength++].open(chars, nPrefix, count);
+			mLastWord = chars;
+
+			return this;
+		}
+
+
+		/**
+		 * @return	The trie. The builder can't be used after this.
+		 */
+		public RadixTrie build() {
+			if(mBuilt) {
+				throw new IllegalStateException("Trie already built");
+			}
+			mBuilt = true;
+
+			while(mPathLength > 1) {
+				closeFrame();
+			}
+			mTrie.mRoot.setChildren(Node.copyOf(mPath[0].mChildren, mPath[0].mChildCount));
+
+			for(int iWord = 0; iWord < mUnsortedWords.size(); iWord++) {
+				mTrie.insert(mUnsortedWords.get(iWord), mUnsortedCounts.get(iWord));
+			}
+
+			return mTrie;
+		}
+
+
+		private void closeFrame() {
+			final Frame frame = mPath[--mPathLength];
+			mPath[mPathLength - 1].addChild(frame.toNode(mTrie, frame.mStart));
+		}
+
+
+		private static int matchingPrefixLength(char[] l, char[] r) {
+			final int n = Math.min(l.length, r.length);
+			for(int i = 0; i < n; i++) {
+				if(l[i] != r[i])
+					return i;
+			}
+
+			return n;
+		}
+
+
+		private static int compare(char[] l, char[] r, int nPrefix) {
+			if(nPrefix < l.length && nPrefix < r.length)
+				return l[nPrefix] - r[nPrefix];
+
+			return l.length - r.length;
+		}
+
+
+		/**
+		 * An open node on the path to the last word. Its value is mWord[mStart, mEnd).
+		 */
+		private static final class Frame {
+			private char[] mWord;
+			private int mStart;
+			private int mEnd;
+			private int mCount;
+			private Node[] mChildren = new Node[4];
+			private int mChildCount;
+
+
+			private void open(char[] word, int start, int count) {
+				mWord = word;
+				mStart = start;
+				mEnd = word.length;
+				mCount = count;
+				mChildCount = 0;
+			}
+
+
+			private void addChild(Node child) {
+				if(mChildCount == mChildren.length) {
+					mChildren = Node.copyOf(mChildren, mChildren.length * 2);
+				}
+				mChildren[mChildCount++] = child;
+			}
+
+
+			private Node toNode(RadixTrie trie, int start) {
+				final Node node = trie.newNode(Node.copyOfRange(mWord, start, mEnd), mEnd, mCount);
+				node.setChildren(Node.copyOf(mChildren, mChildCount));
+
+				return node;
+			}
+		}
+	}
+}
@@ -0,0 +1,207 @@
+package com.comet.keyboard.dictionary.radixtrie;
+
+import com.comet.keyboard.dictionary.radixtrie.RadixTrie.CharComparator;
+
+
+/**
+ * Read access to a radix trie through integer node handles. Both the mutable
+ * {@link RadixTrie} and the array-backed {@link CompactTrie} implement it, so the
+ * suggestion search can walk either one with the same code.
+ *
+ * @author Barry Fruitman
+ */
+public interface Trie {
+	int NO_NODE = -1;
+
+
+	int getRoot();
+
+
+	int getChildCount(int node);
+
+
+	int getChild(int node, int iChild);
+
+
+	/**
+	 * Like getChild(), but in order of descending getMaxCount(), so a search finds the
+	 * most frequent words first. The order is a hint and may be stale after counts change.
+	 */
+	default int getChildByMaxCount(int node, int iChild) {
+		return getChild(node, iChild);
+	}
+
+
+	int getValueLength(int node);
+
+
+	char getValueAt(int node, int iValue);
+
+
+	int getCount(int node);
+
+
+	void setCount(int node, int count);
+
+
+	/**
+	 * @param node	The node
+	 * @return		The highest count of any entry in this node's subtree, including the node
+	 * 				itself. It is an upper bound: it isn't lowered when a count is lowered.
+	 */
+	int getMaxCount(int node);
+
+
+	/**
+	 * Finds the child whose value starts with c. No two children of a node start with the
+	 * same char. This binary-searches children that are sorted by their first char, like a
+	 * CompactTrie's. A trie whose children aren't sorted must override it.
+	 * @param node	The parent node
+	 * @param c		The first char of the child's value
+	 * @return		The child, or NO_NODE if there is none.
+	 */
+	default int findChild(int node, char c) {
+		int low = 0;
+		int high = getChildCount(node) - 1;
+		while(low <= high) {
+			final int mid = (low + high) >>> 1;
+			final int child = getChild(node, mid);
+			final char value = getValueAt(child, 0);
+			if(value < c) {
+				low = mid + 1;
+			} else if(value > c) {
+				high = mid - 1;
+			} else {
+				return child;
+			}
+		}
+
+		return NO_NODE;
+	}
+
+
+	/**
+	 * @param node	The node
+	 * @return		The length of the word that ends at the end of this node's value.
+	 */
+	int getDepth(int node);
+
+
+	String getWord(int node);
+
+
+	default boolean isEntry(int node) {
+		return getCount(node) > 0;
+	}
+
+
+	/**
+	 * Finds the entry that exactly matches word (case-sensitive).
+	 * @param word	The word to find
+	 * @return		The entry node, or NO_NODE if word is not an entry in this trie.
+	 */
+	default int findEntry(CharSequence word) {
+		final int root = getRoot();
+		int node = root;
+		int iWord = 0;
+		while(iWord < word.length()) {
+			final int next = findChild(node, word.charAt(iWord));
+			if(next == NO_NODE) {
+				return NO_NODE;
+			}
+
+			final int length = getValueLength(next);
+			if(iWord + length > word.length()) {
+				return NO_NODE;
+			}
+
+			for(int iValue = 1; iValue < length; iValue++) {
+				if(getValueAt(next, iValue) != word.charAt(iWord + iValue)) {
+					return NO_NODE;
+				}
+			}
+
+			iWord += length;
+			node = next;
+		}
+
+		return node != root && isEntry(node) ? node : NO_NODE;
+	}
+
+
+	/**
+	 * Finds the node where prefix ends. Non-letters in the trie that are missing from
+	 * prefix are skipped (e.g. "dont" finds "don't").
+	 * @param prefix		The prefix to find
+	 * @param comparator	Compares prefix chars to trie chars
+	 * @return				The node where prefix ends, or NO_NODE if there is none.
+	 */
+	default int findNode(CharSequence prefix, CharComparator comparator) {
+		return findNode(prefix, 0, getRoot(), comparator);
+	}
+
+
+	private int findNode(CharSequence prefix, int iString, int node, CharComparator comparator) {
+		if(iString >= prefix.length())
+			return NO_NODE;
+
+		final char c = prefix.charAt(iString);
+		for(int iChild = 0; iChild < getChildCount(node); iChild++) {
+			final int child = getChild(node, iChild);
+			final char first = getValueAt(child, 0);
+			if(Character.isLetter(first) && comparator.compareChars(c, first) != 0)
+				// Can't match. Only non-letters are skipped.
+				continue;
+
+			final int length = getValueLength(child);
+			int iMatches = matches(prefix, iString, child, comparator);
+			if(iMatches > 0) {
+				if(iString + iMatches >= prefix.length()) {
+					return child;
+				} else if(iMatches < length)
+					continue;	// Try the next sibling.
+
+				if(getChildCount(child) == 0)
+					// No grandchildren
+					continue;
+
+				// Recursively search the next child node
+				int result = findNode(prefix, iString + length, child, comparator);
+				if(result != NO_NODE)
+					return result;
+			}
+		}
+
+		return NO_NODE;
+	}
+
+
+	/**
+	 * Performs a case-insensitive match between a node value and a substring for findNode()
+	 * @param string	The string to match
+	 * @param iString	The starting index in string
+	 * @param node		The node whose value to compare against
+	 * @return			The number of matching characters
+	 */
+	private int matches(CharSequence string, int iString, int node, CharComparator comparator) {
+		int iMatches = 0;
+		final int length = getValueLength(node);
+		for(int iValue = 0; iValue < length; iValue++) {
+			if(iString + iValue >= string.length())
+				return iMatches;
+
+			final char c = getValueAt(node, iValue);
+			if(comparator.compareChars(string.charAt(iString + iValue), c) != 0) {
+				if(!Character.isLetter(c)) {
+					iString--;
+					continue;
+				} else
+					return iMatches;
+			}
+
+			iMatches++;
+		}
+
+		return iMatches;
+	}
+}
@@ -31,7 +31,6 @@ import com.comet.keyboard.KeyboardApp;
 import com.comet.keyboard.KeyboardService;
 import com.comet.keyboard.dictionary.Suggestion;
 import com.comet.keyboard.dictionary.Suggestor.FinalSuggestions;
-import com.comet.keyboard.dictionary.Suggestor.SuggestionsExpiredException;
 
 public class SpellCheckService extends SpellCheckerService {
     private static final boolean DBG = true;
@@ -77,10 +76,10 @@ public class SpellCheckService extends SpellCheckerService {
             if(!isInDictionary) {
             	flags = SuggestionsInfo.RESULT_ATTR_LOOKS_LIKE_TYPO;
 
-            	try {
-            		// TODO Checking suggestions again is incredibly inefficient!
-            		FinalSuggestions suggestions = KeyboardService.IME.getSuggestor().findSuggestions(input);
-
+            	// TODO Checking suggestions again is incredibly inefficient!
+            	FinalSuggestions suggestions = KeyboardService.IME.getSuggestor().findSuggestions(input);
+            	if(suggestions != null) {
+            		// Null if a newer request cancelled it
             		suggestions.matchCase();
 
             		if(suggestions.size() > 0)
@@ -89,8 +88,6 @@ public class SpellCheckService extends SpellCheckerService {
             		Iterator<Suggestion> iterator = suggestions.iterator();
             		while(iterator.hasNext())
             			results.add(iterator.next().getWord());
-            	} catch (SuggestionsExpiredException e) {
-            		// Do nothing
             	}
             } else
             	// Not a typo
@@ -0,0 +1,296 @@
+package com.comet.keyboard.dictionary;
+
+import com.comet.keyboard.dictionary.radixtrie.RadixTrie;
+import com.comet.keyboard.dictionary.radixtrie.Trie;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Learns and forgets words on writer threads while reader threads search, and checks that the
+ * readers never fail or see a torn word, i.e. one that is only partly inserted or split.
+ *
+ * @author Barry Fruitman
+ */
+public class ConcurrentLearningTest {
+	private static final int WRITER_COUNT = 2;
+	private static final int READER_COUNT = 3;
+	private static final int WRITES_PER_WRITER = 20000;
+	private static final long TIMEOUT_MILLIS = 60000;
+
+
+	/**
+	 * Writers insert new words into a RadixTrie, which splits its nodes, and zero the counts of
+	 * others. Readers walk the whole trie and check every word against the path to it, and the
+	 * words the writers don't touch against their counts.
+	 */
+	@Test
+	public void radixTrieReadersSeeWholeWords() throws Exception {
+		final Random random = new Random(1);
+		final RadixTrie trie = new RadixTrie();
+		final Set<String> stableWords = new HashSet<>();
+		while(stableWords.size() < 3000) {
+			stableWords.add(createWord(random));
+		}
+		for(String word : stableWords) {
+			trie.insert(word, 7);
+		}
+		final List<String> newWords = createNewWords(random, stableWords, WRITER_COUNT * WRITES_PER_WRITER);
+
+		final ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+		final AtomicInteger walkCount = new AtomicInteger();
+		final AtomicInteger nextWord = new AtomicInteger();
+		final Runnable writer = new Runnable() {
+			@Override
+			public void run() {
+				final Random random = new Random(Thread.currentThread().getId());
+				for(int iWrite = 0; iWrite < WRITES_PER_WRITER; iWrite++) {
+					// RadixTrie has one writer at a time. TrieDictionary's lock ensures it.
+					synchronized(trie) {
+						// Each word is new, so most inserts split a node
+						trie.insert(newWords.get(nextWord.getAndIncrement()), 1 + random.nextInt(50));
+						if(random.nextInt(4) == 0) {
+							trie.insert(newWords.get(random.nextInt(nextWord.get())), 0);
+						}
+					}
+				}
+			}
+		};
+		final Runnable reader = new Runnable() {
+			@Override
+			public void run() {
+				final Map<String, Integer> counts = new HashMap<>();
+				walk(trie, trie.getRoot(), new StringBuilder(), counts);
+				for(String word : stableWords) {
+					assertEquals(word, Integer.valueOf(7), counts.get(word));
+				}
+				walkCount.incrementAndGet();
+			}
+		};
+
+		run(writer, reader, failures);
+
+		assertNoFailures(failures);
+		assertTrue("No walks", walkCount.get() > 0);
+	}
+
+
+	/**
+	 * Writers learn new words, learn more of some reference words and forget new words, while
+	 * readers get suggestions. Every suggestion must be a word that was loaded or learned, and
+	 * the reference words the writers don't touch must always be found with their counts.
+	 */
+	@Test
+	public void searchesSeeWholeWordsWhileLearning() throws Exception {
+		final List<String[]> words = TestDictionary.readWords();
+		final TestDictionary dictionary = new TestDictionary().loadWords(words);
+
+		// Every other word is learned. The rest never change, and the lower case ones are
+		// searched for exactly.
+		final Random random = new Random(2);
+		final Map<String, Integer> stableCounts = new HashMap<>();
+		final List<String> learnedWords = new ArrayList<>();
+		final Set<String> knownWords = new HashSet<>();
+		for(int iWord = 0; iWord < words.size(); iWord++) {
+			final String word = words.get(iWord)[0];
+			knownWords.add(word);
+			if(iWord % 2 == 0) {
+				if(word.matches("[a-z]+")) {
+					stableCounts.put(word, Integer.parseInt(words.get(iWord)[1]));
+				}
+			} else {
+				learnedWords.add(word);
+			}
+		}
+		final List<String> newWords = createNewWords(random, knownWords, 5000);
+		knownWords.addAll(newWords);
+		final List<String> stableWords = new ArrayList<>(stableCounts.keySet());
+
+		final ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+		final AtomicInteger searchCount = new AtomicInteger();
+		final Runnable writer = new Runnable() {
+			@Override
+			public void run() {
+				final Random random = new Random(Thread.currentThread().getId());
+				for(int iWrite = 0; iWrite < WRITES_PER_WRITER; iWrite++) {
+					switch(random.nextInt(3)) {
+						case 0:
+							dictionary.learn(newWords.get(random.nextInt(newWords.size())));
+							break;
+						case 1:
+							dictionary.learn(learnedWords.get(random.nextInt(learnedWords.size())));
+							break;
+						default:
+							dictionary.forget(newWords.get(random.nextInt(newWords.size())));
+					}
+				}
+			}
+		};
+		final Runnable reader = new Runnable() {
+			@Override
+			public void run() {
+				final Random random = new Random(Thread.currentThread().getId() + searchCount.get());
+
+				// A prefix of a learned or a stable word
+				final String word = random.nextBoolean()
+						? newWords.get(random.nextInt(newWords.size()))
+						: stableWords.get(random.nextInt(stableWords.size()));
+				final String composing = word.substring(0, 1 + random.nextInt(word.length()));
+				for(TestDictionary.TestSuggestion suggestion : dictionary.getSuggestions(new SuggestionsRequest(composing))) {
+					assertTrue(composing + ": " + suggestion, knownWords.contains(suggestion.getWord()));
+					assertTrue(composing + ": " + suggestion, suggestion.mCount > 0);
+				}
+
+				// A stable word is always found, with its count
+				final String stableWord = stableWords.get(random.nextInt(stableWords.size()));
+				boolean found = false;
+				for(TestDictionary.TestSuggestion suggestion : dictionary.getMatches(stableWord)) {
+					if(suggestion.getWord().equals(stableWord)) {
+						assertEquals(stableWord, (int) stableCounts.get(stableWord), suggestion.mCount);
+						found = true;
+					}
+				}
+				assertTrue(stableWord + " not found", found);
+				assertEquals(stableWord, (int) stableCounts.get(stableWord), dictionary.getCount(stableWord));
+
+				searchCount.incrementAndGet();
+			}
+		};
+
+		run(writer, reader, failures);
+
+		assertNoFailures(failures);
+		assertTrue("No searches", searchCount.get() > 0);
+	}
+
+
+	/**
+	 * Runs the writers to the end, and the readers over and over until the writers are done.
+	 * Anything the threads throw is added to failures.
+	 */
+	private static void run(final Runnable writer, final Runnable reader, final ConcurrentLinkedQueue<Throwable> failures)
+			throws InterruptedException {
+		final AtomicBoolean done = new AtomicBoolean(false);
+		final List<Thread> writers = new ArrayList<>();
+		final List<Thread> readers = new ArrayList<>();
+		for(int iWriter = 0; iWriter < WRITER_COUNT; iWriter++) {
+			writers.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						writer.run();
+					} catch(Throwable e) {
+						failures.add(e);
+					}
+				}
+			}));
+		}
+		for(int iReader = 0; iReader < READER_COUNT; iReader++) {
+			readers.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						while(!done.get()) {
+							reader.run();
+						}
+					} catch(Throwable e) {
+						failures.add(e);
+					}
+				}
+			}));
+		}
+
+		for(Thread thread : readers) {
+			thread.start();
+		}
+		for(Thread thread : writers) {
+			thread.start();
+		}
+		for(Thread thread : writers) {
+			thread.join(TIMEOUT_MILLIS);
+		}
+		done.set(true);
+		for(Thread thread : readers) {
+			thread.join(TIMEOUT_MILLIS);
+		}
+	}
+
+
+	private static void assertNoFailures(final ConcurrentLinkedQueue<Throwable> failures) {
+		final Throwable failure = failures.peek();
+		if(failure != null) {
+			throw new AssertionError(failures.size() + " failures. The first was: " + failure, failure);
+		}
+	}
+
+
+	/**
+	 * Walks a trie and checks that each node's depth and word match the path to it.
+	 * @param counts	Filled with the words found and their counts
+	 */
+	private static void walk(final Trie trie, final int node, final StringBuilder path, final Map<String, Integer> counts) {
+		final int childCount = trie.getChildCount(node);
+		for(int iChild = 0; iChild < childCount; iChild++) {
+			final int child = trie.getChild(node, iChild);
+			final int pathLength = path.length();
+			final int valueLength = trie.getValueLength(child);
+			for(int iValue = 0; iValue < valueLength; iValue++) {
+				path.append(trie.getValueAt(child, iValue));
+			}
+			assertEquals(path.toString(), path.length(), trie.getDepth(child));
+
+			final int count = trie.getCount(child);
+			if(count > 0) {
+				final String word = path.toString();
+				assertEquals(word, trie.getWord(child));
+				assertEquals("Found twice: " + word, null, counts.put(word, count));
+			}
+
+			walk(trie, child, path, counts);
+			path.setLength(pathLength);
+		}
+	}
+
+
+	/**
+	 * @return	count distinct words that are not in words
+	 */
+	private static List<String> createNewWords(final Random random, final Set<String> words, final int count) {
+		final Set<String> newWords = new HashSet<>();
+		while(newWords.size() < count) {
+			final String word = createWord(random);
+			if(!words.contains(word)) {
+				newWords.add(word);
+			}
+		}
+
+		return new ArrayList<>(newWords);
+	}
+
+
+	/**
+	 * @return	A random word of 2 to 9 letters from a to f, so words share many prefixes
+	 */
+	private static String createWord(final Random random) {
+		final int length = 2 + random.nextInt(8);
+		final StringBuilder word = new StringBuilder(length);
+		for(int iChar = 0; iChar < length; iChar++) {
+			word.append((char) ('a' + random.nextInt(6)));
+		}
+
+		return word.toString();
+	}
+}
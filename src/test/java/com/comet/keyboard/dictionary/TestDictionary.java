@@ -0,0 +1,135 @@
+package com.comet.keyboard.dictionary;
+
+import com.comet.keyboard.dictionary.radixtrie.CompactTrie;
+import com.comet.keyboard.dictionary.radixtrie.RadixTrie;
+import com.comet.keyboard.languages.Language;
+import com.comet.keyboard.layouts.QwertyEnLayout;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * An English dictionary for tests, loaded from the reference word list in words.tsv instead of
+ * a DB. Nothing it learns is written anywhere.
+ *
+ * @author Barry Fruitman
+ */
+final class TestDictionary extends TrieDictionary<TestDictionary.TestSuggestion, SuggestionsRequest> {
+	private CompactTrie mLoadedTrie;
+
+
+	TestDictionary() {
+		super(null, new KeyCollator(Language.createLanguage("en"), new QwertyEnLayout()));
+	}
+
+
+	/**
+	 * @return	The reference words and their counts, most frequent first
+	 */
+	static List<String[]> readWords() throws IOException {
+		final List<String[]> words = new ArrayList<>();
+		try(BufferedReader reader = new BufferedReader(new InputStreamReader(
+				TestDictionary.class.getResourceAsStream("words.tsv"), StandardCharsets.UTF_8))) {
+			String line;
+			while((line = reader.readLine()) != null) {
+				words.add(line.split("\t"));
+			}
+		}
+
+		return words;
+	}
+
+
+	/**
+	 * Compiles words into the base trie, the same way a dictionary DB is loaded.
+	 * @return	This dictionary
+	 */
+	TestDictionary loadWords(final List<String[]> words) {
+		final List<String[]> sorted = new ArrayList<>(words);
+		Collections.sort(sorted, new Comparator<String[]>() {
+			@Override
+			public int compare(final String[] word1, final String[] word2) {
+				return word1[0].compareTo(word2[0]);
+			}
+		});
+
+		final RadixTrie.Builder builder = new RadixTrie.Builder();
+		int countSum = 0;
+		for(String[] word : sorted) {
+			final int count = Integer.parseInt(word[1]);
+			builder.add(word[0], count);
+			countSum += count;
+		}
+		mLoadedTrie = CompactTrie.compile(builder.build());
+		setBase(mLoadedTrie);
+		setCountSum(countSum);
+
+		return this;
+	}
+
+
+	/**
+	 * @return	The base trie compiled by loadWords()
+	 */
+	CompactTrie getLoadedTrie() {
+		return mLoadedTrie;
+	}
+
+
+	@Override
+	protected void loadDictionary() {
+		// Loaded by loadWords()
+	}
+
+
+	@Override
+	protected void addSuggestion(
+			final Suggestions<TestSuggestion> suggestions,
+			final String word,
+			final int count,
+			final int countSum,
+			final double editDistance) {
+		suggestions.add(new TestSuggestion(word, count, getScore(count, countSum, editDistance)));
+	}
+
+
+	@Override
+	double getScore(final TestSuggestion suggestion) {
+		return suggestion.mScore;
+	}
+
+
+	@Override
+	void incrementDb(final String word, final int increment) {
+	}
+
+
+	@Override
+	void deleteFromDB(final String word) {
+	}
+
+
+	static final class TestSuggestion extends Suggestion {
+		final int mCount;
+		final double mScore;
+
+		TestSuggestion(final String word, final int count, final double score) {
+			super(word);
+			mCount = count;
+			mScore = score;
+		}
+
+
+		@Override
+		public String toString() {
+			return String.format(Locale.US, "%s(%d,%.6f)", getWord(), mCount, mScore);
+		}
+	}
+}
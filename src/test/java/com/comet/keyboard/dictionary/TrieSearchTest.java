@@ -0,0 +1,328 @@
+package com.comet.keyboard.dictionary;
+
+import com.comet.keyboard.dictionary.radixtrie.RadixTrie;
+import com.comet.keyboard.dictionary.radixtrie.Trie;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the iterative TrieSearch to the recursive search it replaced, over the reference
+ * word list, for typed, mistyped and partial words at every max edit distance.
+ *
+ * @author Barry Fruitman
+ */
+public class TrieSearchTest {
+	private static final int MAX_EDIT_DISTANCE = 4;
+
+	private static TestDictionary sDictionary;
+	private static RadixTrie sOverlay;
+	private static RadixTrie sAscendingOverlay;
+	private static List<String> sQueries;
+	private static Map<String, Integer> sCounts;
+
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		final List<String[]> words = TestDictionary.readWords();
+		sDictionary = new TestDictionary().loadWords(words);
+
+		// The same words in a RadixTrie, inserted most frequent first like the overlay
+		sOverlay = new RadixTrie();
+		sCounts = new HashMap<>();
+		for(String[] word : words) {
+			sOverlay.insert(word[0], Integer.parseInt(word[1]));
+			sCounts.put(word[0], Integer.parseInt(word[1]));
+		}
+
+		// And least frequent first, so the children aren't in order of max count
+		sAscendingOverlay = new RadixTrie();
+		for(int iWord = words.size() - 1; iWord >= 0; iWord--) {
+			sAscendingOverlay.insert(words.get(iWord)[0], Integer.parseInt(words.get(iWord)[1]));
+		}
+
+		// Prefixes of words, with a typo in every other one
+		final Random random = new Random(42);
+		final String keys = "qwertyuiopasdfghjklzxcvbnm";
+		sQueries = new ArrayList<>();
+		for(int iQuery = 0; iQuery < 150; iQuery++) {
+			final String word = words.get(random.nextInt(words.size()))[0];
+			final StringBuilder query = new StringBuilder(word.substring(0, 1 + random.nextInt(word.length())));
+			if(iQuery % 2 == 1) {
+				query.setCharAt(random.nextInt(query.length()), keys.charAt(random.nextInt(keys.length())));
+			}
+			sQueries.add(query.toString());
+		}
+		sQueries.add("dont");
+		sQueries.add("cant");
+		sQueries.add("wellknown");
+	}
+
+
+	@Test
+	public void matchesRecursiveSearch() {
+		for(String query : sQueries) {
+			for(int maxEditDistance = 0; maxEditDistance <= MAX_EDIT_DISTANCE; maxEditDistance++) {
+				for(Trie trie : new Trie[] {sDictionary.getLoadedTrie(), sOverlay, sAscendingOverlay}) {
+					final Suggestions<TestDictionary.TestSuggestion> expected = searchRecursively(trie, query, maxEditDistance);
+					final Suggestions<TestDictionary.TestSuggestion> actual = sDictionary.createSuggestions(new SuggestionsRequest(query));
+					final int status = search(trie, actual, maxEditDistance, SuggestionsRequest.NO_DEADLINE);
+
+					assertEquals(TrieSearch.COMPLETE, status);
+					assertEquals(query + " at " + maxEditDistance, expected.toString(), actual.toString());
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * A search whose deadline has already passed stops at its first check. Its suggestions
+	 * must still be real matches, although a word may be found by a different path than in a
+	 * complete search, so its score can differ.
+	 */
+	@Test
+	public void truncatedSearchFindsOnlyMatches() {
+		int truncatedCount = 0;
+		for(String query : sQueries) {
+			for(int maxEditDistance = 0; maxEditDistance <= MAX_EDIT_DISTANCE; maxEditDistance++) {
+				final Trie trie = sDictionary.getLoadedTrie();
+				final Suggestions<TestDictionary.TestSuggestion> expected = searchRecursively(trie, query, maxEditDistance);
+				final Suggestions<TestDictionary.TestSuggestion> actual = sDictionary.createSuggestions(new SuggestionsRequest(query));
+				final int status = search(trie, actual, maxEditDistance, System.nanoTime() - 1);
+
+				if(status == TrieSearch.COMPLETE) {
+					assertEquals(query + " at " + maxEditDistance, expected.toString(), actual.toString());
+					continue;
+				}
+
+				assertEquals(TrieSearch.TRUNCATED, status);
+				truncatedCount++;
+
+				for(TestDictionary.TestSuggestion suggestion : actual) {
+					final String message = query + " at " + maxEditDistance + ": " + suggestion;
+					final Integer count = sCounts.get(suggestion.getWord());
+					assertTrue(message, count != null && count == suggestion.mCount);
+
+					// The score is the word's frequency plus a whole edit distance within the limit
+					final double editDistance = suggestion.mScore - sDictionary.getScore(count, sDictionary.getCountSum(), 0);
+					assertEquals(message, Math.rint(editDistance), editDistance, 1e-9);
+					assertTrue(message, Math.rint(editDistance) <= maxEditDistance);
+					assertTrue(message, Math.rint(editDistance) >= Math.abs(countLetters(suggestion.getWord()) - query.length()));
+				}
+			}
+		}
+
+		assertTrue("No search was truncated", truncatedCount > 0);
+	}
+
+
+	/**
+	 * @return	The number of letters in a word. Other characters are matched for free.
+	 */
+	private static int countLetters(final String word) {
+		int letterCount = 0;
+		for(int iChar = 0; iChar < word.length(); iChar++) {
+			if(Character.isLetter(word.charAt(iChar))) {
+				letterCount++;
+			}
+		}
+
+		return letterCount;
+	}
+
+
+	private static int search(
+			final Trie trie,
+			final Suggestions<TestDictionary.TestSuggestion> suggestions,
+			final int maxEditDistance,
+			final long deadline) {
+		final TrieSearch<TestDictionary.TestSuggestion> search = new TrieSearch<>(
+				sDictionary, suggestions, 0, sDictionary.getCountSum(), maxEditDistance, null, deadline);
+		search.search(trie, trie.getRoot(), 1);
+		search.finish();
+
+		return search.getStatus();
+	}
+
+
+	private static Suggestions<TestDictionary.TestSuggestion> searchRecursively(
+			final Trie trie,
+			final String query,
+			final int maxEditDistance) {
+		final Suggestions<TestDictionary.TestSuggestion> suggestions =
+				sDictionary.createSuggestions(new SuggestionsRequest(query));
+		new RecursiveSearch(sDictionary, suggestions, maxEditDistance).search(trie);
+
+		return suggestions;
+	}
+
+
+	/**
+	 * The recursive search that TrieSearch replaced, without search sessions. It edits the
+	 * composing in place as it goes, and adds each match as soon as it finds it.
+	 */
+	private static final class RecursiveSearch {
+		private final TestDictionary mDictionary;
+		private final Suggestions<TestDictionary.TestSuggestion> mSuggestions;
+		private final double mMaxEditDistance;
+		private final int mCountSum;
+
+
+		RecursiveSearch(
+				final TestDictionary dictionary,
+				final Suggestions<TestDictionary.TestSuggestion> suggestions,
+				final double maxEditDistance) {
+			mDictionary = dictionary;
+			mSuggestions = suggestions;
+			mMaxEditDistance = maxEditDistance;
+			mCountSum = dictionary.getCountSum();
+		}
+
+
+		void search(final Trie trie) {
+			search(trie, new StringBuilder(mSuggestions.getComposing()), 0, trie.getRoot(), 1, 0);
+		}
+
+
+		private void search(
+				final Trie trie,
+				final StringBuilder composing,
+				final int iComposing,
+				final int node,
+				final int iNodeValue,
+				final double editDistance) {
+			if(editDistance > mMaxEditDistance) {
+				return;
+			}
+
+			if(!canBeatWorst(trie, node, editDistance)) {
+				// Nothing below this node can make the cut
+				return;
+			}
+
+			final int valueLength = trie.getValueLength(node);
+
+			if(iComposing >= composing.length()) {
+				// End of composing. Look for suggestions below this node and add them.
+				final double trailingEditDistance = trie.getDepth(node) - composing.length();
+				for(int iValue = iNodeValue; iValue < valueLength; iValue++) {
+					composing.append(trie.getValueAt(node, iValue));
+				}
+				addSuggestions(trie, node, composing, editDistance + trailingEditDistance);
+				composing.setLength(composing.length() - (valueLength - iNodeValue));
+
+				return;
+			}
+
+			if(iNodeValue >= valueLength) {
+				// End of this node's key. Traverse children, most frequent first.
+				final int childCount = trie.getChildCount(node);
+				for(int iChild = 0; iChild < childCount; iChild++) {
+					final int child = trie.getChildByMaxCount(node, iChild);
+					if(!canBeatWorst(trie, child, editDistance)) {
+						// The order is a hint, so a later child can still make the cut
+						continue;
+					}
+
+					search(trie, composing, iComposing, child, 0, editDistance);
+				}
+
+				return;
+			}
+
+			final char c = trie.getValueAt(node, iNodeValue);
+
+			// Skip non-letter characters
+			if(!Character.isLetter(c) && !Character.isSpaceChar(c)) {
+				composing.insert(iComposing, c);
+				search(trie, composing, iComposing + 1, node, iNodeValue + 1, editDistance);
+				composing.deleteCharAt(iComposing);
+
+				return;
+			}
+
+			final char keyStroke = composing.charAt(iComposing);
+
+			// Compare the keystroke to the next character in the trie traversal
+			int iKeyDistance = mDictionary.mCollator.compareCharToKey(c, keyStroke);
+			if(iKeyDistance >= 0 && iKeyDistance + editDistance <= mMaxEditDistance) {
+				// Matched key. Follow this node.
+				final double matchEditDistance = iKeyDistance == 0 ? editDistance : editDistance + EditDistance.SUBSTITUTE;
+				composing.setCharAt(iComposing, c);
+				search(trie, composing, iComposing + 1, node, iNodeValue + 1, matchEditDistance);
+				composing.setCharAt(iComposing, keyStroke);
+			}
+
+			// Assume this composing is missing a keystroke. Insert missing char and follow node.
+			composing.insert(iComposing, c);
+			search(trie, composing, iComposing + 1, node, iNodeValue + 1, editDistance + EditDistance.DELETE);
+			composing.deleteCharAt(iComposing);
+
+			// Is this key adjacent the next keystroke?
+			if(iComposing < composing.length() - 1) {
+				iKeyDistance = mDictionary.mCollator.compareCharToKey(composing.charAt(iComposing + 1), keyStroke);
+				if(iKeyDistance >= 0) {
+					// Assume it is a double-tap. Delete it and follow node.
+					final char deleted = composing.charAt(iComposing);
+					composing.deleteCharAt(iComposing);
+					search(trie, composing, iComposing, node, iNodeValue, editDistance + EditDistance.INSERT);
+					composing.insert(iComposing, deleted);
+				}
+			}
+		}
+
+
+		private void addSuggestions(
+				final Trie trie,
+				final int node,
+				final StringBuilder prefix,
+				final double editDistance) {
+			if(editDistance > mMaxEditDistance || !canBeatWorst(trie, node, editDistance)) {
+				return;
+			}
+
+			// Add this node if it's an entry
+			if(trie.isEntry(node)) {
+				mDictionary.addSuggestion(mSuggestions, prefix.toString(), trie.getCount(node), mCountSum, editDistance);
+			}
+
+			// Traverse all children, most frequent first
+			final int childCount = trie.getChildCount(node);
+			for(int iChild = 0; iChild < childCount; iChild++) {
+				final int child = trie.getChildByMaxCount(node, iChild);
+				final int valueLength = trie.getValueLength(child);
+				for(int iValue = 0; iValue < valueLength; iValue++) {
+					prefix.append(trie.getValueAt(child, iValue));
+				}
+				addSuggestions(trie, child, prefix, editDistance + valueLength);
+				prefix.setLength(prefix.length() - valueLength);
+			}
+		}
+
+
+		/**
+		 * Checks if any entry in a subtree could still be added to a full list of suggestions.
+		 */
+		private boolean canBeatWorst(final Trie trie, final int node, final double editDistance) {
+			final TestDictionary.TestSuggestion worst = mSuggestions.getWorst();
+			if(worst == null) {
+				return true;
+			}
+
+			final double frequency = (double) trie.getMaxCount(node) / (double) mCountSum;
+			final double minScore = (frequency >= 1 ? 0 : -Math.log(frequency)) + editDistance;
+
+			return !(minScore > worst.mScore);
+		}
+	}
+}
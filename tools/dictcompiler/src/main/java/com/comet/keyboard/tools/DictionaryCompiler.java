@@ -0,0 +1,158 @@
+package com.comet.keyboard.tools;
+
+import com.comet.keyboard.dictionary.DictionaryImage;
+import com.comet.keyboard.dictionary.NGramModel;
+import com.comet.keyboard.dictionary.radixtrie.CompactTrie;
+import com.comet.keyboard.dictionary.radixtrie.RadixTrie;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+
+/**
+ * Compiles a dictionary DB (e.g. en.dic) into a dictionary image (e.g. en.img) that the
+ * keyboard maps and uses in place instead of loading the DB on the phone.
+ *
+ * <p>The lexicon trie and look-ahead model are built exactly the way LanguageDictionaryDB and
+ * LookAheadDictionaryDB build them at runtime. Every query has a total order, so the same
+ * DB always produces the same image, byte for byte. The image carries its format version
+ * and a checksum, which the loader checks before using it.
+ *
+ * <pre>
+ * Usage: DictionaryCompiler &lt;lang&gt;.dic [&lt;lang&gt;.img]
+ * </pre>
+ *
+ * @author Barry Fruitman
+ */
+public final class DictionaryCompiler {
+	private static final String USAGE = "Usage: DictionaryCompiler <lang>.dic [<lang>.img]";
+	private static final String DIC_EXT = ".dic";
+
+
+	private DictionaryCompiler() {
+	}
+
+
+	public static void main(String[] args) {
+		if(args.length < 1 || args.length > 2) {
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+
+		final File dicFile = new File(args[0]);
+		final File imgFile = new File(args.length > 1 ? args[1] : getImagePath(args[0]));
+		try {
+			compile(dicFile, imgFile);
+		} catch (IOException | SQLException e) {
+			System.err.println("Failed to compile " + dicFile + ": " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+
+	private static String getImagePath(String dicPath) {
+		final String path = dicPath.endsWith(DIC_EXT) ? dicPath.substring(0, dicPath.length() - DIC_EXT.length()) : dicPath;
+
+		return path + DictionaryImage.FILE_EXT;
+	}
+
+
+	/**
+	 * Compiles a dictionary DB into an image.
+	 * @param dicFile	The dictionary DB to read
+	 * @param imgFile	The image to write. It is replaced if it exists.
+	 * @throws IOException	If the DB doesn't exist or the image can't be written.
+	 * @throws SQLException	If the DB can't be read.
+	 */
+	public static void compile(File dicFile, File imgFile) throws IOException, SQLException {
+		if(!dicFile.isFile()) {
+			throw new FileNotFoundException(dicFile.getPath());
+		}
+
+		final long start = System.currentTimeMillis();
+		try(Connection db = DriverManager.getConnection("jdbc:sqlite:" + dicFile.getPath())) {
+			final RadixTrie.Builder lexicon = new RadixTrie.Builder();
+			final int lexiconCountSum = loadLexicon(db, lexicon);
+			final CompactTrie compactLexicon = CompactTrie.compile(lexicon.build());
+			System.out.println("lexicon: " + compactLexicon + ", count sum " + lexiconCountSum);
+
+			if(!hasTable(db, "trigrams")) {
+				DictionaryImage.write(imgFile,
+						new int[] {DictionaryImage.SECTION_LEXICON},
+						new int[] {lexiconCountSum},
+						new CompactTrie[] {compactLexicon});
+			} else {
+				final NGramModel.Builder lookAhead = new NGramModel.Builder();
+				final int lookAheadCountSum = loadLookAhead(db, lookAhead);
+				final NGramModel ngrams = lookAhead.build();
+				final CompactTrie contextWords = ngrams.compileContextWords();
+				System.out.println("look-ahead: " + ngrams + ", " + contextWords + ", count sum " + lookAheadCountSum);
+
+				DictionaryImage.write(imgFile,
+						new int[] {DictionaryImage.SECTION_LEXICON, DictionaryImage.SECTION_LOOKAHEAD},
+						new int[] {lexiconCountSum, lookAheadCountSum},
+						new CompactTrie[] {compactLexicon, contextWords},
+						ngrams, lookAheadCountSum);
+			}
+		}
+
+		// Only useful next to this copy of the image. The installed copy is verified on the device.
+		DictionaryImage.getVerifiedFile(imgFile).delete();
+
+		System.out.println("Wrote " + imgFile + " (" + imgFile.length() + " bytes, image version "
+				+ DictionaryImage.VERSION + ") in " + (System.currentTimeMillis() - start) + " ms");
+	}
+
+
+	/**
+	 * Loads the lexicon table like LanguageDictionaryDB does. Duplicate words keep the
+	 * lowest count but every count is added to the sum, same as at runtime.
+	 * @return	The sum of all counts
+	 */
+	private static int loadLexicon(Connection db, RadixTrie.Builder lexicon) throws SQLException {
+		int countSum = 0;
+		try(Statement statement = db.createStatement();
+			ResultSet rows = statement.executeQuery(
+					"SELECT word, count FROM lexicon WHERE count>=0 ORDER BY word, count DESC")) {
+			while(rows.next()) {
+				final int count = rows.getInt(2);
+				countSum += count;
+				lexicon.add(rows.getString(1), count);
+			}
+		}
+
+		return countSum;
+	}
+
+
+	/**
+	 * Loads the trigrams table like LookAheadDictionaryDB does. The model doesn't depend on
+	 * the order of the trigrams, so neither does the image.
+	 * @return	The sum of all 3-gram counts
+	 */
+	private static int loadLookAhead(Connection db, NGramModel.Builder lookAhead) throws SQLException {
+		try(Statement statement = db.createStatement();
+			ResultSet rows = statement.executeQuery("SELECT word1, word2, word3, count FROM trigrams")) {
+			while(rows.next()) {
+				lookAhead.add(rows.getString(1), rows.getString(2), rows.getString(3), rows.getInt(4));
+			}
+		}
+
+		return lookAhead.getCountSum();
+	}
+
+
+	private static boolean hasTable(Connection db, String table) throws SQLException {
+		try(Statement statement = db.createStatement();
+			ResultSet rows = statement.executeQuery(
+					"SELECT name FROM sqlite_master WHERE type='table' AND name='" + table + "'")) {
+			return rows.next();
+		}
+	}
+}